@@ -2,6 +2,7 @@ package common.utils;
 
 import jakarta.servlet.http.HttpServletResponse;
 import java.io.IOException;
+import java.util.List;
 import java.util.Map;
 import java.util.stream.Collectors;
 
@@ -14,6 +15,8 @@ public class ResponseData {
     private int status;
     private String message;
     private Map<String, String> map;
+    /** 列表数据（例如分页的目录项），为 null 时不输出 */
+    private List<Map<String, String>> items;
 
     public ResponseData(int status, String message) {
         this.status = status;
@@ -31,6 +34,12 @@ public class ResponseData {
         return new ResponseData(200, message, map);
     }
 
+    public static ResponseData success(String message, Map<String, String> map, List<Map<String, String>> items) {
+        ResponseData data = new ResponseData(200, message, map);
+        data.items = items;
+        return data;
+    }
+
     public static ResponseData error(String message) {
         return new ResponseData(500, message, null);
     }
@@ -51,6 +60,11 @@ public class ResponseData {
         if (map != null && !map.isEmpty()) {
             sb.append(",\"map\":").append(mapToJson(map));
         }
+        if (items != null) {
+            sb.append(",\"items\":[")
+              .append(items.stream().map(this::mapToJson).collect(Collectors.joining(",")))
+              .append("]");
+        }
 
         sb.append("}");
         return sb.toString();
@@ -75,8 +89,10 @@ public class ResponseData {
     public int getStatus() { return status; }
     public String getMessage() { return message; }
     public Map<String, String> getMap() { return map; }
+    public List<Map<String, String>> getItems() { return items; }
 
     public void setStatus(int status) { this.status = status; }
     public void setMessage(String message) { this.message = message; }
     public void setMap(Map<String, String> map) { this.map = map; }
+    public void setItems(List<Map<String, String>> items) { this.items = items; }
 }
@@ -0,0 +1,367 @@
+package core;
+
+import common.utils.ResponseData;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.HexFormat;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Pattern;
+
+/**
+ * ChunkedUploads
+ * ----------------------------------------
+ * 可续传的分块上传
+ * - upload_start 声明目标路径与总大小，得到上传编号与块大小
+ * - 每块单独请求，附带该块的 SHA-256，通过 FileChannel 写到暂存文件的固定偏移处；校验失败的块视为未收到
+ * - 连接中断后用 upload_status 查询缺少的块，只重传这些块
+ * - 全部收到后 upload_commit 刷盘并原子替换目标文件，之前读取方只会看到旧文件
+ * 每个 session 同时进行的上传数与未完成上传的总字节数都有上限；长时间无进展的上传自动丢弃
+ */
+public final class ChunkedUploads {
+
+    /** 单个文件的最大字节数 */
+    private static final long MAX_BYTES = Long.getLong("core.upload.maxBytes", 1024L * 1024 * 1024);
+
+    /** 每个 session 未完成上传的总字节数上限 */
+    private static final long SESSION_MAX_BYTES = Long.getLong("core.upload.sessionMaxBytes", 2L * 1024 * 1024 * 1024);
+
+    /** 每个 session 同时进行的上传数 */
+    private static final int SESSION_MAX_UPLOADS = Integer.getInteger("core.upload.maxPerSession", 4);
+
+    /** 默认块大小；客户端可在 MIN_CHUNK_BYTES 与 MAX_CHUNK_BYTES 之间自选 */
+    private static final int CHUNK_BYTES = Integer.getInteger("core.upload.chunkBytes", 4 * 1024 * 1024);
+    private static final int MIN_CHUNK_BYTES = 64 * 1024;
+    private static final int MAX_CHUNK_BYTES = 64 * 1024 * 1024;
+
+    /** 无进展超过该时间的上传被丢弃 */
+    private static final long IDLE_MS = TimeUnit.MINUTES.toMillis(Long.getLong("core.upload.idleMinutes", 30));
+
+    /**
+     * 暂存目录：放在项目目录之外，文件树与搜索索引看不到未完成的上传；
+     * 与项目位于同一文件系统时提交只需一次原子重命名
+     */
+    private static final Path STAGING = Path.of(System.getProperty("core.upload.dir", ".uploads")).toAbsolutePath().normalize();
+
+    /** 暂存文件名即上传编号（UUID）；启动清理只删除这种名字的文件，目录配置错误时不会误删其他文件 */
+    private static final Pattern UPLOAD_ID = Pattern.compile("[0-9a-f]{8}-[0-9a-f]{4}-[0-9a-f]{4}-[0-9a-f]{4}-[0-9a-f]{12}");
+
+    private static final ChunkedUploads INSTANCE = new ChunkedUploads();
+
+    public static ChunkedUploads getInstance() {
+        return INSTANCE;
+    }
+
+    /** 一次上传 */
+    private static final class Upload {
+        private final String id;
+        private final String sessionId;
+        private final ProjectManager manager;
+        private final String path;        // 项目内相对路径
+        private final Path target;
+        private final Path temp;
+        private final long size;
+        private final int chunkSize;
+        private final int chunks;
+        private final FileChannel channel;
+        private final BitSet received;     // 由自身加锁保护
+        private volatile long lastActive = System.currentTimeMillis();
+        private boolean closed;            // 已提交或已丢弃，由 received 的锁保护
+
+        private Upload(String id, String sessionId, ProjectManager manager, String path, Path target,
+                       Path temp, long size, int chunkSize, FileChannel channel) {
+            this.id = id;
+            this.sessionId = sessionId;
+            this.manager = manager;
+            this.path = path;
+            this.target = target;
+            this.temp = temp;
+            this.size = size;
+            this.chunkSize = chunkSize;
+            this.chunks = (int) Math.max(1, (size + chunkSize - 1) / chunkSize);
+            this.channel = channel;
+            this.received = new BitSet(chunks);
+        }
+
+        private long chunkLength(int index) {
+            return Math.min(chunkSize, size - (long) index * chunkSize);
+        }
+    }
+
+    private final Map<String, Upload> uploads = new ConcurrentHashMap<>();
+    private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread t = new Thread(r, "upload-cleaner");
+        t.setDaemon(true);
+        return t;
+    });
+
+    private ChunkedUploads() {
+        // 上次运行遗留的暂存文件已无法续传
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(STAGING)) {
+            for (Path stale : stream) {
+                if (UPLOAD_ID.matcher(stale.getFileName().toString()).matches()
+                        && Files.isRegularFile(stale, LinkOption.NOFOLLOW_LINKS)) {
+                    Files.deleteIfExists(stale);
+                }
+            }
+        } catch (IOException ignored) {
+            // 目录不存在
+        }
+        scheduler.scheduleWithFixedDelay(this::expireIdle, 1, 1, TimeUnit.MINUTES);
+    }
+
+    /** 开始上传，返回上传编号、块大小与块数 */
+    public ResponseData start(String sessionId, ProjectManager manager, String relativePath, long size, int chunkSize) {
+        try {
+            Path target = manager.resolvePath(relativePath);
+            if (size < 0 || size > MAX_BYTES) {
+                return new ResponseData(413, "Upload size must be between 0 and " + MAX_BYTES + " bytes");
+            }
+            if (Files.isDirectory(target)) {
+                return new ResponseData(400, "Target is a directory: " + relativePath);
+            }
+            chunkSize = chunkSize <= 0 ? CHUNK_BYTES : Math.max(MIN_CHUNK_BYTES, Math.min(chunkSize, MAX_CHUNK_BYTES));
+
+            Files.createDirectories(STAGING);
+            String id = UUID.randomUUID().toString();
+            Path temp = STAGING.resolve(id);
+            Upload upload;
+            synchronized (uploads) {
+                int count = 0;
+                long pending = 0;
+                for (Upload u : uploads.values()) {
+                    if (u.sessionId.equals(sessionId)) {
+                        count++;
+                        pending += u.size;
+                    }
+                }
+                if (count >= SESSION_MAX_UPLOADS) {
+                    return new ResponseData(429, "Too many concurrent uploads (max " + SESSION_MAX_UPLOADS + ")");
+                }
+                if (pending + size > SESSION_MAX_BYTES) {
+                    return new ResponseData(413, "Pending uploads exceed " + SESSION_MAX_BYTES + " bytes for this session");
+                }
+                FileChannel channel = FileChannel.open(temp, StandardOpenOption.CREATE_NEW,
+                        StandardOpenOption.READ, StandardOpenOption.WRITE);
+                upload = new Upload(id, sessionId, manager, relativePath, target, temp, size, chunkSize, channel);
+                uploads.put(id, upload);
+            }
+            return ResponseData.success("Upload started", Map.of(
+                    "upload", id,
+                    "path", relativePath,
+                    "size", String.valueOf(size),
+                    "chunkSize", String.valueOf(upload.chunkSize),
+                    "chunks", String.valueOf(upload.chunks)
+            ));
+        } catch (IllegalArgumentException e) {
+            return new ResponseData(400, e.getMessage());
+        } catch (Exception e) {
+            return ResponseData.error("Start upload failed: " + e.getMessage());
+        }
+    }
+
+    /**
+     * 写入一块：请求体即该块内容，长度必须与块大小一致（最后一块为剩余长度）
+     * 同一上传的不同块可以并发写入；校验失败时返回 400，该块仍为缺少
+     */
+    public ResponseData writeChunk(String sessionId, String id, int index, String sha256, InputStream body) {
+        Upload upload = find(sessionId, id);
+        if (upload == null) return new ResponseData(404, "Unknown upload: " + id);
+        if (index < 0 || index >= upload.chunks) return new ResponseData(400, "Chunk index out of range: " + index);
+        if (sha256 == null || sha256.isEmpty()) return new ResponseData(400, "Missing chunk sha256");
+
+        // 重传的块会覆盖原有内容，校验通过前视为缺少
+        synchronized (upload.received) {
+            if (upload.closed) return new ResponseData(409, "Upload already finished: " + id);
+            upload.received.clear(index);
+        }
+        long expected = upload.chunkLength(index);
+        long offset = (long) index * upload.chunkSize;
+        MessageDigest digest = newSha256();
+        ByteBuffer buffer = ByteBuffer.allocate((int) Math.min(64 * 1024, Math.max(1, expected)));
+        long written = 0;
+        try {
+            int n;
+            while ((n = body.read(buffer.array(), 0, buffer.capacity())) > 0) {
+                if (written + n > expected) {
+                    return new ResponseData(400, "Chunk " + index + " is longer than " + expected + " bytes");
+                }
+                digest.update(buffer.array(), 0, n);
+                buffer.clear().limit(n);
+                while (buffer.hasRemaining()) {
+                    written += upload.channel.write(buffer, offset + written);
+                }
+                buffer.clear();
+            }
+        } catch (IOException e) {
+            return ResponseData.error("Write chunk " + index + " failed: " + e.getMessage());
+        }
+        upload.lastActive = System.currentTimeMillis();
+        if (written != expected) {
+            return new ResponseData(400, "Chunk " + index + " has " + written + " bytes, expected " + expected);
+        }
+        String actual = HexFormat.of().formatHex(digest.digest());
+        if (!actual.equalsIgnoreCase(sha256)) {
+            return new ResponseData(400, "Chunk " + index + " checksum mismatch", Map.of("sha256", actual));
+        }
+
+        int receivedCount;
+        synchronized (upload.received) {
+            if (upload.closed) return new ResponseData(409, "Upload already finished: " + id);
+            upload.received.set(index);
+            receivedCount = upload.received.cardinality();
+        }
+        return ResponseData.success("Chunk received", Map.of(
+                "upload", id,
+                "chunk", String.valueOf(index),
+                "received", String.valueOf(receivedCount),
+                "chunks", String.valueOf(upload.chunks)
+        ));
+    }
+
+    /** 上传进度与缺少的块（如 "0-3,7"），用于断线后续传 */
+    public ResponseData status(String sessionId, String id) {
+        Upload upload = find(sessionId, id);
+        if (upload == null) return new ResponseData(404, "Unknown upload: " + id);
+        Map<String, String> map = new HashMap<>();
+        synchronized (upload.received) {
+            map.put("received", String.valueOf(upload.received.cardinality()));
+            map.put("missing", missingRanges(upload.received, upload.chunks));
+        }
+        map.put("upload", id);
+        map.put("path", upload.path);
+        map.put("size", String.valueOf(upload.size));
+        map.put("chunkSize", String.valueOf(upload.chunkSize));
+        map.put("chunks", String.valueOf(upload.chunks));
+        return ResponseData.success("Upload status", map);
+    }
+
+    /** 全部块都已收到时刷盘并原子替换目标文件 */
+    public ResponseData commit(String sessionId, String id) {
+        Upload upload = find(sessionId, id);
+        if (upload == null) return new ResponseData(404, "Unknown upload: " + id);
+        synchronized (upload.received) {
+            if (upload.closed) return new ResponseData(409, "Upload already finished: " + id);
+            int missing = upload.chunks - upload.received.cardinality();
+            if (upload.size > 0 && missing > 0) {
+                return new ResponseData(409, "Upload incomplete: " + missing + " chunks missing",
+                        Map.of("missing", missingRanges(upload.received, upload.chunks)));
+            }
+            upload.closed = true;
+        }
+        uploads.remove(id);
+        try {
+            upload.channel.truncate(upload.size);
+            upload.channel.force(true);
+            upload.channel.close();
+            Files.createDirectories(upload.target.getParent());
+            synchronized (ProjectManager.lockFor(upload.target)) {
+                try {
+                    ProjectManager.moveIntoPlace(upload.temp, upload.target);
+                } catch (AtomicMoveNotSupportedException e) {
+                    // 暂存目录与项目不在同一文件系统：先复制到目标目录，再在目录内原子替换
+                    Path local = Files.createTempFile(upload.target.getParent(), "." + upload.target.getFileName(), ".tmp");
+                    try {
+                        Files.copy(upload.temp, local, StandardCopyOption.REPLACE_EXISTING);
+                        ProjectManager.moveIntoPlace(local, upload.target);
+                    } finally {
+                        Files.deleteIfExists(local);
+                    }
+                }
+            }
+            upload.manager.fileTree().added(upload.target);
+            ContentCache.getInstance().invalidate(upload.target);
+            return ResponseData.success("Upload committed: " + upload.path, Map.of(
+                    "path", upload.path,
+                    "size", String.valueOf(upload.size)
+            ));
+        } catch (Exception e) {
+            return ResponseData.error("Commit upload failed: " + e.getMessage());
+        } finally {
+            discard(upload);
+        }
+    }
+
+    /** 放弃上传并删除暂存文件 */
+    public ResponseData abort(String sessionId, String id) {
+        Upload upload = find(sessionId, id);
+        if (upload == null) return new ResponseData(404, "Unknown upload: " + id);
+        synchronized (upload.received) {
+            if (upload.closed) return new ResponseData(409, "Upload already finished: " + id);
+            upload.closed = true;
+        }
+        uploads.remove(id);
+        discard(upload);
+        return ResponseData.success("Upload aborted", Map.of("upload", id));
+    }
+
+    /** session 失效时丢弃其全部上传 */
+    public void closeSession(String sessionId) {
+        for (Upload upload : uploads.values()) {
+            if (upload.sessionId.equals(sessionId)) abort(sessionId, upload.id);
+        }
+    }
+
+    /** 只能访问自己 session 的上传 */
+    private Upload find(String sessionId, String id) {
+        Upload upload = id == null ? null : uploads.get(id);
+        return upload != null && upload.sessionId.equals(sessionId) ? upload : null;
+    }
+
+    private void expireIdle() {
+        long now = System.currentTimeMillis();
+        for (Upload upload : uploads.values()) {
+            if (now - upload.lastActive > IDLE_MS) {
+                System.out.println("[ChunkedUploads] Expire idle upload " + upload.id + " (" + upload.path + ")");
+                abort(upload.sessionId, upload.id);
+            }
+        }
+    }
+
+    private static void discard(Upload upload) {
+        try {
+            upload.channel.close();
+            Files.deleteIfExists(upload.temp);
+        } catch (IOException e) {
+            System.err.println("[ChunkedUploads] Delete " + upload.temp + " failed: " + e.getMessage());
+        }
+    }
+
+    private static String missingRanges(BitSet received, int chunks) {
+        StringBuilder sb = new StringBuilder();
+        int start = received.nextClearBit(0);
+        while (start < chunks) {
+            int end = Math.min(received.nextSetBit(start) < 0 ? chunks : received.nextSetBit(start), chunks) - 1;
+            if (sb.length() > 0) sb.append(',');
+            sb.append(start);
+            if (end > start) sb.append('-').append(end);
+            start = received.nextClearBit(end + 1);
+        }
+        return sb.toString();
+    }
+
+    private static MessageDigest newSha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
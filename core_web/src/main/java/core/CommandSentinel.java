@@ -0,0 +1,180 @@
+package core;
+
+import java.nio.charset.StandardCharsets;
+import java.security.SecureRandom;
+import java.util.Arrays;
+import java.util.HexFormat;
+
+/**
+ * CommandSentinel
+ * ----------------------------------------
+ * 命令结束标记
+ * - 每条命令之后，终端在 stdout 和 stderr 各打印一行 "<marker>:<id>:<exitCode>"
+ * - marker 每个终端随机生成，读取时从输出中剔除，据此得到精确的结束时刻与退出码
+ */
+public final class CommandSentinel {
+
+    /** 标记行的接收方 */
+    public interface Listener {
+        /** 普通输出（已剔除标记行） */
+        void onText(byte[] data, int offset, int length);
+
+        /** 读到命令结束标记 */
+        void onMarker(long commandId, int exitCode);
+    }
+
+    /** 标记行在 marker 之后的最大长度（":id:exitCode"），超出则视为普通输出 */
+    private static final int MAX_SUFFIX = 48;
+
+    private final String marker;
+    private final byte[] markerBytes;
+    private final boolean windows;
+
+    public CommandSentinel(boolean windows) {
+        byte[] random = new byte[8];
+        new SecureRandom().nextBytes(random);
+        this.marker = "__CW_" + HexFormat.of().formatHex(random) + "__";
+        this.markerBytes = marker.getBytes(StandardCharsets.US_ASCII);
+        this.windows = windows;
+    }
+
+    /**
+     * 生成写入终端的文本：命令本身 + 打印结束标记
+     * bash 下命令转成 $'...' 字符串交给 eval，与标记写在同一行，整行解析完才执行：
+     * 读取 stdin 的命令不会吞掉标记行；引号或 heredoc 未闭合时 eval 报语法错误（退出码 2），
+     * 不会把标记和之后排队的命令读进字符串里；
+     * 后续命令已排在终端的 stdin 中，命令的 stdin 重定向为 /dev/null，读取 stdin 的命令（read、cat、Scanner）
+     * 立即得到 EOF，不会把排队的命令当作输入读走
+     */
+    public String wrap(long commandId, String command) {
+        if (windows) {
+            String echo = "@echo " + marker + ":" + commandId + ":%errorlevel%";
+            return command + "\r\n" + echo + " & " + echo + " 1>&2\r\n";
+        }
+        String printf = "printf '%s:%d:%d\\n' " + marker + " " + commandId + " $__cw_rc";
+        return "eval " + ansiQuote(command) + " </dev/null; __cw_rc=$?; " + printf + "; " + printf + " >&2\n";
+    }
+
+    /** bash 的 $'...' 引用：反斜杠、单引号与控制字符转义，结果不含换行 */
+    static String ansiQuote(String text) {
+        StringBuilder sb = new StringBuilder(text.length() + 3).append("$'");
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (c == 0) continue;
+            if (c == '\\' || c == '\'') {
+                sb.append('\\').append(c);
+            } else if (c == '\n') {
+                sb.append("\\n");
+            } else if (c < 0x20 || c == 0x7f) {
+                sb.append(String.format("\\x%02x", (int) c));
+            } else {
+                sb.append(c);
+            }
+        }
+        return sb.append('\'').toString();
+    }
+
+    public Scanner newScanner(Listener listener) {
+        return new Scanner(listener);
+    }
+
+    /** 单个输出流的扫描器（非线程安全，每个流一个） */
+    public final class Scanner {
+        private final Listener listener;
+        private byte[] held = new byte[0];
+
+        private Scanner(Listener listener) {
+            this.listener = listener;
+        }
+
+        /** 输入一块数据；可能跨块的标记前缀暂存到下一块 */
+        public void feed(byte[] data, int offset, int length) {
+            byte[] bytes = data;
+            if (held.length > 0) {
+                bytes = new byte[held.length + length];
+                System.arraycopy(held, 0, bytes, 0, held.length);
+                System.arraycopy(data, offset, bytes, held.length, length);
+                offset = 0;
+                length = bytes.length;
+                held = new byte[0];
+            }
+            int end = offset + length;
+            int textStart = offset;
+            int from = offset;
+
+            while (true) {
+                int idx = indexOf(bytes, markerBytes, from, end);
+                if (idx < 0) break;
+                int suffixStart = idx + markerBytes.length;
+                int newline = indexOf(bytes, new byte[]{'\n'}, suffixStart, Math.min(end, suffixStart + MAX_SUFFIX));
+                if (newline < 0) {
+                    if (end - suffixStart < MAX_SUFFIX) {
+                        // 标记行尚未读完，等待下一块
+                        text(bytes, textStart, idx - textStart);
+                        hold(bytes, idx, end);
+                        return;
+                    }
+                    from = idx + 1;
+                    continue;
+                }
+                long[] parsed = parseSuffix(bytes, suffixStart, newline);
+                if (parsed == null) {
+                    from = idx + 1;
+                    continue;
+                }
+                text(bytes, textStart, idx - textStart);
+                listener.onMarker(parsed[0], (int) parsed[1]);
+                textStart = from = newline + 1;
+            }
+
+            // 末尾可能是标记的前半部分
+            int keep = partialMarkerLength(bytes, Math.max(textStart, end - markerBytes.length + 1), end);
+            text(bytes, textStart, end - keep - textStart);
+            hold(bytes, end - keep, end);
+        }
+
+        private void text(byte[] bytes, int offset, int length) {
+            if (length > 0) listener.onText(bytes, offset, length);
+        }
+
+        private void hold(byte[] bytes, int from, int to) {
+            held = Arrays.copyOfRange(bytes, from, to);
+        }
+
+        /** 末尾与 marker 前缀相同的字节数 */
+        private int partialMarkerLength(byte[] bytes, int from, int end) {
+            for (int start = from; start < end; start++) {
+                int n = end - start;
+                boolean match = true;
+                for (int i = 0; i < n && match; i++) {
+                    match = bytes[start + i] == markerBytes[i];
+                }
+                if (match) return n;
+            }
+            return 0;
+        }
+    }
+
+    /** 解析 ":id:exitCode"（允许行尾 \r），格式不符返回 null */
+    private static long[] parseSuffix(byte[] bytes, int from, int to) {
+        String suffix = new String(bytes, from, to - from, StandardCharsets.US_ASCII).strip();
+        String[] parts = suffix.split(":");
+        if (parts.length != 3 || !parts[0].isEmpty()) return null;
+        try {
+            return new long[]{Long.parseLong(parts[1]), Integer.parseInt(parts[2].strip())};
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    private static int indexOf(byte[] bytes, byte[] target, int from, int to) {
+        outer:
+        for (int i = from; i <= to - target.length; i++) {
+            for (int j = 0; j < target.length; j++) {
+                if (bytes[i + j] != target[j]) continue outer;
+            }
+            return i;
+        }
+        return -1;
+    }
+}
@@ -0,0 +1,418 @@
+package core;
+
+import com.sun.source.tree.CompilationUnitTree;
+import com.sun.source.tree.IdentifierTree;
+import com.sun.source.tree.MemberSelectTree;
+import com.sun.source.util.JavacTask;
+import com.sun.source.util.TaskEvent;
+import com.sun.source.util.TaskListener;
+import com.sun.source.util.TreePathScanner;
+import com.sun.source.util.Trees;
+import common.utils.ResponseData;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+import javax.lang.model.element.Element;
+import javax.lang.model.element.ElementKind;
+import javax.lang.model.element.TypeElement;
+import javax.tools.Diagnostic;
+import javax.tools.DiagnosticCollector;
+import javax.tools.FileObject;
+import javax.tools.ForwardingJavaFileManager;
+import javax.tools.JavaCompiler;
+import javax.tools.JavaFileManager;
+import javax.tools.JavaFileObject;
+import javax.tools.StandardJavaFileManager;
+import javax.tools.StandardLocation;
+import javax.tools.ToolProvider;
+
+/**
+ * CompileService
+ * ----------------------------------------
+ * 在进程内增量编译项目的 src/main/java（javax.tools.JavaCompiler），输出到 target/classes
+ * - 每个项目保留一个常驻的 StandardJavaFileManager 与 classpath，不必每次启动 javac 进程、重新打开 jar
+ * - 记录每个源文件的大小与修改时间、生成的类文件、以及编译时解析到的项目内类型（依赖）
+ * - 只重新编译变化的源文件和引用了它们所声明类型的源文件；删除的源文件同时删除其类文件
+ * - 诊断按 kind / path / line / column / code / message 结构化返回
+ * 首次编译（或服务重启后）为全量编译；有错误的文件下次仍会重新编译
+ * classpath：target/classpath.txt（mvn dependency:build-classpath 的输出，pom 变化后重新生成）；
+ * 无法生成时退回本服务自身的 classpath（已包含 jetty 与 common）
+ */
+public final class CompileService {
+
+    /** 源码目录 */
+    private static final String SOURCE_ROOT = "src/main/java";
+
+    /** 编译输出目录 */
+    private static final String OUTPUT_DIR = "target/classes";
+
+    /** 缓存的依赖 classpath */
+    private static final String CLASSPATH_FILE = "target/classpath.txt";
+
+    /** 编译目标版本 */
+    private static final String RELEASE = System.getProperty("core.compile.release", "21");
+
+    /** 生成 classpath 的 mvn 命令超时（秒） */
+    private static final long MAVEN_TIMEOUT_SECONDS = Long.getLong("core.compile.mavenTimeout", 120);
+
+    /** 单次返回的最大诊断条数 */
+    private static final int MAX_DIAGNOSTICS = 500;
+
+    private static final JavaCompiler JAVAC = ToolProvider.getSystemJavaCompiler();
+
+    private static final Map<String, CompileService> SERVICES = new ConcurrentHashMap<>();
+
+    /** 源文件的大小与修改时间 */
+    private record Stamp(long size, long modifiedNanos) {}
+
+    private final Path root;
+    private final Path sourceRoot;
+    private final Path output;
+    private final StandardJavaFileManager fileManager;
+
+    /** 以下状态由 this 加锁保护（同一项目的编译串行） */
+    private final Map<String, Stamp> stamps = new HashMap<>();
+    /** 源文件（相对 src/main/java）-> 生成的类（二进制名） */
+    private final Map<String, Set<String>> outputs = new HashMap<>();
+    /** 源文件 -> 引用的项目内顶层类型（限定名） */
+    private final Map<String, Set<String>> dependencies = new HashMap<>();
+    /** 生成 classpath 时 pom.xml 的修改时间，用于判断是否需要重新生成 */
+    private long classpathPomModified = -1;
+    private String classpathSource = "";
+
+    private CompileService(Path root) {
+        this.root = root;
+        this.sourceRoot = root.resolve(SOURCE_ROOT);
+        this.output = root.resolve(OUTPUT_DIR);
+        this.fileManager = JAVAC.getStandardFileManager(null, Locale.ROOT, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * 编译项目
+     * @param full 为 true 时忽略记录的状态，全部重新编译
+     */
+    public static ResponseData compile(String project, boolean full) {
+        if (JAVAC == null) return ResponseData.error("No Java compiler available (running on a JRE?)");
+        if (project == null || !ProjectManager.PROJECTS.containsKey(project)) {
+            return new ResponseData(400, "Unknown project: " + project);
+        }
+        try {
+            CompileService service = SERVICES.computeIfAbsent(project, p -> {
+                try {
+                    return new CompileService(Path.of(ProjectManager.PROJECTS.get(p)).toRealPath());
+                } catch (IOException e) {
+                    throw new IllegalStateException(e.getMessage(), e);
+                }
+            });
+            synchronized (service) {
+                return service.run(full);
+            }
+        } catch (Exception e) {
+            return ResponseData.error("Compile failed: " + e.getMessage());
+        }
+    }
+
+    private ResponseData run(boolean full) throws IOException {
+        long start = System.nanoTime();
+        if (!Files.isDirectory(sourceRoot)) return new ResponseData(404, "No source directory: " + SOURCE_ROOT);
+        Files.createDirectories(output);
+        updateClasspath();
+
+        if (full) {
+            stamps.clear();
+            outputs.clear();
+            dependencies.clear();
+        }
+        boolean fullBuild = stamps.isEmpty();
+
+        // 1. 对比文件大小与修改时间，找出新增、修改、删除的源文件
+        Map<String, Stamp> current = scanSources();
+        Set<String> changed = new LinkedHashSet<>();
+        for (Map.Entry<String, Stamp> e : current.entrySet()) {
+            if (!e.getValue().equals(stamps.get(e.getKey()))) changed.add(e.getKey());
+        }
+        Set<String> removed = new LinkedHashSet<>(stamps.keySet());
+        removed.removeAll(current.keySet());
+
+        // 2. 引用了变化文件所声明类型的源文件也要重新编译（签名变化可能使它们出错或需要重新生成）
+        Set<String> affectedTypes = new HashSet<>();
+        for (String source : changed) affectedTypes.addAll(topLevelTypes(source));
+        for (String source : removed) affectedTypes.addAll(topLevelTypes(source));
+        Set<String> dependents = new LinkedHashSet<>();
+        if (!affectedTypes.isEmpty()) {
+            for (Map.Entry<String, Set<String>> e : dependencies.entrySet()) {
+                String source = e.getKey();
+                if (changed.contains(source) || !current.containsKey(source)) continue;
+                for (String type : e.getValue()) {
+                    if (affectedTypes.contains(type)) {
+                        dependents.add(source);
+                        break;
+                    }
+                }
+            }
+        }
+
+        // 3. 删除的源文件：删除其类文件并忘记状态
+        for (String source : removed) {
+            deleteOutputs(source);
+            stamps.remove(source);
+            dependencies.remove(source);
+        }
+
+        Set<String> toCompile = new LinkedHashSet<>(changed);
+        toCompile.addAll(dependents);
+        Map<String, String> map = new HashMap<>();
+        map.put("mode", fullBuild ? "full" : "incremental");
+        map.put("changed", String.valueOf(changed.size()));
+        map.put("dependents", String.valueOf(dependents.size()));
+        map.put("removed", String.valueOf(removed.size()));
+        map.put("classpath", classpathSource);
+        if (toCompile.isEmpty()) {
+            map.put("compiled", "0");
+            map.put("errors", "0");
+            map.put("warnings", "0");
+            map.put("success", "true");
+            map.put("durationMs", String.valueOf((System.nanoTime() - start) / 1_000_000));
+            return ResponseData.success(removed.isEmpty() ? "Up to date" : "Compile success", map);
+        }
+
+        // 4. 旧的类文件先删除，避免源文件中已删去的嵌套类、内部类残留
+        for (String source : toCompile) deleteOutputs(source);
+
+        List<File> files = new ArrayList<>();
+        for (String source : toCompile) files.add(sourceRoot.resolve(source).toFile());
+        Iterable<? extends JavaFileObject> units = fileManager.getJavaFileObjectsFromFiles(files);
+
+        DiagnosticCollector<JavaFileObject> diagnostics = new DiagnosticCollector<>();
+        Map<String, Set<String>> produced = new HashMap<>();
+        Map<String, Set<String>> referenced = new HashMap<>();
+        JavaFileManager recording = new ForwardingJavaFileManager<>(fileManager) {
+            @Override
+            public JavaFileObject getJavaFileForOutput(Location location, String className, JavaFileObject.Kind kind,
+                                                       FileObject sibling) throws IOException {
+                if (kind == JavaFileObject.Kind.CLASS && sibling != null) {
+                    String source = relative(sibling);
+                    if (source != null) produced.computeIfAbsent(source, k -> new HashSet<>()).add(className);
+                }
+                return super.getJavaFileForOutput(location, className, kind, sibling);
+            }
+        };
+        List<String> options = List.of("-d", output.toString(), "--release", RELEASE, "-g", "-proc:none",
+                "-implicit:none", "-encoding", "UTF-8");
+        JavacTask task = (JavacTask) JAVAC.getTask(null, recording, diagnostics, options, null, units);
+        task.addTaskListener(new DependencyRecorder(task, referenced));
+        boolean success = task.call();
+
+        // 5. 记录状态：成功的文件更新时间戳；失败时不更新，下次重新编译
+        for (String source : toCompile) {
+            outputs.put(source, produced.getOrDefault(source, Set.of(pathTypeName(source))));
+            Set<String> refs = referenced.get(source);
+            if (refs != null) dependencies.put(source, refs);
+            if (success) stamps.put(source, current.get(source));
+            else stamps.remove(source);
+        }
+
+        List<Map<String, String>> items = new ArrayList<>();
+        int errors = 0;
+        int warnings = 0;
+        for (Diagnostic<? extends JavaFileObject> d : diagnostics.getDiagnostics()) {
+            if (d.getKind() == Diagnostic.Kind.ERROR) errors++;
+            else if (d.getKind() == Diagnostic.Kind.WARNING || d.getKind() == Diagnostic.Kind.MANDATORY_WARNING) warnings++;
+            if (items.size() >= MAX_DIAGNOSTICS) continue;
+            Map<String, String> item = new HashMap<>();
+            item.put("kind", d.getKind().name().toLowerCase(Locale.ROOT));
+            if (d.getSource() != null) {
+                String source = relative(d.getSource());
+                item.put("path", source != null ? SOURCE_ROOT + "/" + source : d.getSource().getName());
+            }
+            if (d.getLineNumber() != Diagnostic.NOPOS) item.put("line", String.valueOf(d.getLineNumber()));
+            if (d.getColumnNumber() != Diagnostic.NOPOS) item.put("column", String.valueOf(d.getColumnNumber()));
+            if (d.getCode() != null) item.put("code", d.getCode());
+            item.put("message", d.getMessage(Locale.ROOT));
+            items.add(item);
+        }
+
+        map.put("compiled", String.valueOf(toCompile.size()));
+        map.put("errors", String.valueOf(errors));
+        map.put("warnings", String.valueOf(warnings));
+        map.put("success", String.valueOf(success));
+        map.put("durationMs", String.valueOf((System.nanoTime() - start) / 1_000_000));
+        return ResponseData.success(success ? "Compile success" : "Compile failed: " + errors + " error(s)", map, items);
+    }
+
+    /** src/main/java 下全部 .java 文件的大小与修改时间 */
+    private Map<String, Stamp> scanSources() throws IOException {
+        Map<String, Stamp> result = new LinkedHashMap<>();
+        try (Stream<Path> paths = Files.walk(sourceRoot)) {
+            for (Path p : (Iterable<Path>) paths::iterator) {
+                if (!p.getFileName().toString().endsWith(".java")) continue;
+                BasicFileAttributes attrs = Files.readAttributes(p, BasicFileAttributes.class);
+                if (!attrs.isRegularFile()) continue;
+                result.put(sourceRoot.relativize(p).toString().replace('\\', '/'),
+                        new Stamp(attrs.size(), attrs.lastModifiedTime().to(TimeUnit.NANOSECONDS)));
+            }
+        }
+        return result;
+    }
+
+    /** 源文件上次编译生成的顶层类（去掉 $ 后缀的二进制名） */
+    private Set<String> topLevelTypes(String source) {
+        Set<String> types = new HashSet<>();
+        for (String className : outputs.getOrDefault(source, Set.of())) {
+            int dollar = className.indexOf('$');
+            types.add(dollar < 0 ? className : className.substring(0, dollar));
+        }
+        return types;
+    }
+
+    /** 由路径推出的顶层类名（编译失败、没有生成类文件时使用） */
+    private static String pathTypeName(String source) {
+        return source.substring(0, source.length() - ".java".length()).replace('/', '.');
+    }
+
+    private void deleteOutputs(String source) throws IOException {
+        Set<String> classes = outputs.remove(source);
+        if (classes == null) return;
+        for (String className : classes) {
+            Files.deleteIfExists(output.resolve(className.replace('.', '/') + ".class"));
+        }
+    }
+
+    /** 文件对象相对 src/main/java 的路径；不在源码目录下时为 null */
+    private String relative(FileObject file) {
+        Path path = fileManager.asPath(file);
+        if (path == null) return null;
+        path = path.toAbsolutePath().normalize();
+        return path.startsWith(sourceRoot) ? sourceRoot.relativize(path).toString().replace('\\', '/') : null;
+    }
+
+    /**
+     * 设置 classpath：依赖 + target/classes（未重新编译的类从这里解析）
+     * pom.xml 变化后重新运行 mvn dependency:build-classpath；失败时使用本服务的 classpath
+     */
+    private void updateClasspath() throws IOException {
+        Path pom = root.resolve("pom.xml");
+        long pomModified = Files.isRegularFile(pom) ? Files.getLastModifiedTime(pom).toMillis() : 0;
+        if (pomModified == classpathPomModified) return;
+
+        Path cached = root.resolve(CLASSPATH_FILE);
+        boolean fresh = Files.isRegularFile(cached) && Files.getLastModifiedTime(cached).toMillis() >= pomModified;
+        if (!fresh && pomModified > 0) fresh = runMaven();
+
+        String entries;
+        if (fresh) {
+            entries = Files.readString(cached, StandardCharsets.UTF_8).trim();
+            classpathSource = "maven";
+        } else {
+            entries = System.getProperty("java.class.path", "");
+            classpathSource = "server";
+        }
+        List<File> classpath = new ArrayList<>();
+        classpath.add(output.toFile());
+        for (String entry : entries.split(File.pathSeparator)) {
+            if (!entry.isBlank()) classpath.add(new File(entry));
+        }
+        fileManager.setLocation(StandardLocation.CLASS_PATH, classpath);
+        classpathPomModified = pomModified;
+    }
+
+    /** 运行 mvn dependency:build-classpath 生成 target/classpath.txt，返回是否成功 */
+    private boolean runMaven() {
+        boolean isWindows = System.getProperty("os.name").toLowerCase().contains("win");
+        ProcessBuilder pb = new ProcessBuilder(isWindows ? "mvn.cmd" : "mvn", "-q", "-B",
+                "dependency:build-classpath", "-Dmdep.outputFile=" + CLASSPATH_FILE)
+                .directory(root.toFile())
+                .redirectErrorStream(true)
+                .redirectOutput(ProcessBuilder.Redirect.DISCARD);
+        try {
+            Process process = pb.start();
+            if (!process.waitFor(MAVEN_TIMEOUT_SECONDS, TimeUnit.SECONDS)) {
+                process.destroyForcibly();
+                return false;
+            }
+            return process.exitValue() == 0 && Files.isRegularFile(root.resolve(CLASSPATH_FILE));
+        } catch (IOException e) {
+            return false;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    /**
+     * 在每个编译单元完成类型检查（ANALYZE）后，记录它引用到的顶层类型
+     * 编译结束后只保留本项目的类型，作为依赖关系
+     */
+    private final class DependencyRecorder implements TaskListener {
+
+        private final Trees trees;
+        private final Map<String, Set<String>> referenced;
+        private final Map<String, Boolean> projectTypes = new HashMap<>();
+
+        DependencyRecorder(JavacTask task, Map<String, Set<String>> referenced) {
+            this.trees = Trees.instance(task);
+            this.referenced = referenced;
+        }
+
+        @Override
+        public void finished(TaskEvent e) {
+            if (e.getKind() != TaskEvent.Kind.ANALYZE || e.getCompilationUnit() == null) return;
+            CompilationUnitTree unit = e.getCompilationUnit();
+            String source = relative(unit.getSourceFile());
+            if (source == null) return;
+            Set<String> types = referenced.computeIfAbsent(source, k -> new HashSet<>());
+            new TreePathScanner<Void, Void>() {
+                @Override
+                public Void visitIdentifier(IdentifierTree node, Void unused) {
+                    record();
+                    return super.visitIdentifier(node, unused);
+                }
+
+                @Override
+                public Void visitMemberSelect(MemberSelectTree node, Void unused) {
+                    record();
+                    return super.visitMemberSelect(node, unused);
+                }
+
+                private void record() {
+                    Element element = trees.getElement(getCurrentPath());
+                    TypeElement top = topLevel(element);
+                    if (top != null && isProjectType(top)) types.add(top.getQualifiedName().toString());
+                }
+            }.scan(unit, null);
+        }
+
+        /** 元素所在的顶层类型 */
+        private static TypeElement topLevel(Element element) {
+            TypeElement top = null;
+            for (Element e = element; e != null && e.getKind() != ElementKind.PACKAGE && e.getKind() != ElementKind.MODULE;
+                 e = e.getEnclosingElement()) {
+                if (e instanceof TypeElement type) top = type;
+            }
+            return top;
+        }
+
+        /** 来自本项目源码或 target/classes 的类型（排除 JDK 与依赖 jar） */
+        private boolean isProjectType(TypeElement type) {
+            String name = type.getQualifiedName().toString();
+            if (name.isEmpty()) return false;
+            return projectTypes.computeIfAbsent(name, n -> trees.getPath(type) != null
+                    || Files.isRegularFile(output.resolve(n.replace('.', '/') + ".class")));
+        }
+    }
+}
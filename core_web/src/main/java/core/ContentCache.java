@@ -0,0 +1,125 @@
+package core;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * ContentCache
+ * ----------------------------------------
+ * 项目文件内容的共享读缓存（所有 session 共用）
+ * - 以路径为键，命中时再用修改时间与大小确认未被外部修改
+ * - 按文件字节数计入总预算，超出时淘汰最久未读的文件（LRU）
+ * - ProjectManager 写入、创建、删除文件时立即失效
+ * - 缓存原始字节：read_file 取解码后的文本，编辑器使用的 raw 直接发送字节
+ */
+public final class ContentCache {
+
+    /** 缓存的总字节预算 */
+    private static final long MAX_BYTES = Long.getLong("core.cache.maxBytes", 32L * 1024 * 1024);
+
+    /** 单个文件超过预算的 1/8 时不缓存，避免一个大文件挤掉全部模板文件 */
+    private static final long MAX_ENTRY_BYTES = MAX_BYTES / 8;
+
+    private static final ContentCache INSTANCE = new ContentCache();
+
+    public static ContentCache getInstance() {
+        return INSTANCE;
+    }
+
+    private record Entry(long modifiedNanos, long size, byte[] content) {}
+
+    /** 访问顺序的 LinkedHashMap，队首为最久未读的文件；由自身加锁保护 */
+    private final LinkedHashMap<Path, Entry> entries = new LinkedHashMap<>(256, 0.75f, true);
+    private long bytes;
+    private long hits;
+    private long misses;
+    private long evictions;
+    private long invalidations;
+
+    private ContentCache() {}
+
+    /** 文件大小在单个缓存项的上限内 */
+    public static boolean cacheable(long size) {
+        return size <= MAX_ENTRY_BYTES;
+    }
+
+    /** 读取文本文件（UTF-8），优先使用缓存 */
+    public String read(Path path) throws IOException {
+        return new String(readBytes(path, Files.readAttributes(path, BasicFileAttributes.class)), StandardCharsets.UTF_8);
+    }
+
+    /**
+     * 读取文件的原始字节，优先使用缓存
+     * @param attrs 调用方已读取的文件属性（与其生成的 ETag 对应同一版本）
+     */
+    public byte[] readBytes(Path path, BasicFileAttributes attrs) throws IOException {
+        long modified = attrs.lastModifiedTime().to(TimeUnit.NANOSECONDS);
+        synchronized (entries) {
+            Entry entry = entries.get(path);
+            if (entry != null && entry.modifiedNanos() == modified && entry.size() == attrs.size()) {
+                hits++;
+                return entry.content();
+            }
+            misses++;
+        }
+
+        // 在锁外读盘，不阻塞其他文件的命中
+        byte[] content = Files.readAllBytes(path);
+        if (cacheable(attrs.size())) {
+            synchronized (entries) {
+                Entry old = entries.put(path, new Entry(modified, attrs.size(), content));
+                if (old != null) bytes -= old.size();
+                bytes += attrs.size();
+                evictOverBudget();
+            }
+        }
+        return content;
+    }
+
+    /** 失效一个文件，或目录下的全部文件 */
+    public void invalidate(Path path) {
+        synchronized (entries) {
+            Iterator<Map.Entry<Path, Entry>> it = entries.entrySet().iterator();
+            while (it.hasNext()) {
+                Map.Entry<Path, Entry> e = it.next();
+                if (e.getKey().startsWith(path)) {
+                    bytes -= e.getValue().size();
+                    invalidations++;
+                    it.remove();
+                }
+            }
+        }
+    }
+
+    /** 命中、未命中、淘汰等计数，用于调整预算 */
+    public Map<String, String> stats() {
+        Map<String, String> map = new HashMap<>();
+        synchronized (entries) {
+            map.put("entries", String.valueOf(entries.size()));
+            map.put("bytes", String.valueOf(bytes));
+            map.put("maxBytes", String.valueOf(MAX_BYTES));
+            map.put("hits", String.valueOf(hits));
+            map.put("misses", String.valueOf(misses));
+            map.put("evictions", String.valueOf(evictions));
+            map.put("invalidations", String.valueOf(invalidations));
+        }
+        return map;
+    }
+
+    private void evictOverBudget() {
+        Iterator<Entry> it = entries.values().iterator();
+        while (bytes > MAX_BYTES && it.hasNext()) {
+            bytes -= it.next().size();
+            evictions++;
+            it.remove();
+        }
+    }
+}
@@ -9,6 +9,7 @@ import org.eclipse.jetty.servlet.ServletHolder;
 import org.eclipse.jetty.servlet.FilterHolder;
 import org.eclipse.jetty.util.resource.Resource;
 import org.eclipse.jetty.util.thread.QueuedThreadPool;
+import org.eclipse.jetty.websocket.server.config.JettyWebSocketServletContainerInitializer;
 
 import java.io.IOException;
 import java.util.concurrent.ConcurrentHashMap;
@@ -66,6 +67,24 @@ public class CoreWebServer {
         context.addServlet(SystemServlet.class, "/system");
         context.addServlet(ProjectServlet.class, "/project");
         context.addServlet(TerminalServlet.class, "/terminal");
+        context.addServlet(JShellServlet.class, "/jshell");
+
+        // 终端 WebSocket 推送通道（沿用 HTTP 请求的 session 定位终端）
+        JettyWebSocketServletContainerInitializer.configure(context, (servletContext, container) ->
+                container.addMapping("/terminal/ws", (upgradeReq, upgradeResp) -> {
+                    HttpServletRequest httpReq = upgradeReq.getHttpServletRequest();
+                    String outSeq = httpReq.getParameter("outSeq");
+                    String errSeq = httpReq.getParameter("errSeq");
+                    String terminalId = httpReq.getParameter("tid");
+                    return new TerminalSocket(httpReq.getSession(true).getId(),
+                            terminalId == null ? TerminalManager.DEFAULT_TERMINAL : terminalId,
+                            outSeq == null ? null : Long.valueOf(outSeq),
+                            errSeq == null ? null : Long.valueOf(errSeq));
+                }));
+
+        // 预热终端进程池
+        ShellPool.getInstance();
+        ResourceGovernor.getInstance();
 
         server.setHandler(context);
         server.start();
@@ -146,6 +165,10 @@ public class CoreWebServer {
             @Override
             public void sessionDestroyed(HttpSessionEvent se) {
                 String sessionId = se.getSession().getId();
+                // 结束该 session 的全部终端进程
+                TerminalManager.getInstance().closeSession(sessionId);
+                JShellEngine.closeSession(sessionId);
+                ChunkedUploads.getInstance().closeSession(sessionId);
                 if (activeUsers.remove(sessionId) != null) {
                     userSemaphore.release();
                     System.out.println("[SESSION] User disconnected: " + sessionId);
@@ -0,0 +1,173 @@
+package core;
+
+import common.utils.ResponseData;
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+
+/**
+ * DeleteJobs
+ * ----------------------------------------
+ * 后台递归删除目录
+ * - 提交后立即返回任务编号，在 fork/join 线程池中按子目录并行删除，不占用请求线程
+ * - 单个文件删除失败不中断其他子树，结束时汇总全部错误
+ * - 进度：已删除文件数、目录数、释放字节数
+ * - 任务属于提交它的 session，只有该 session 可以查询
+ * 符号链接只删除链接本身，不进入其指向的目录
+ */
+public final class DeleteJobs {
+
+    /** 删除线程数 */
+    private static final int PARALLELISM = Integer.getInteger("core.delete.parallelism",
+            Math.max(2, Runtime.getRuntime().availableProcessors()));
+
+    /** 保留可查询的任务数 */
+    private static final int JOB_HISTORY = 100;
+
+    /** 错误报告中保留的条数，之后只计数 */
+    private static final int MAX_ERRORS = 200;
+
+    private static final ForkJoinPool POOL = new ForkJoinPool(PARALLELISM, pool -> {
+        var thread = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(pool);
+        thread.setName("delete-job-" + thread.getPoolIndex());
+        thread.setDaemon(true);
+        return thread;
+    }, null, false);
+
+    private static final AtomicLong NEXT_ID = new AtomicLong(1);
+    private static final Map<Long, Job> JOBS = new LinkedHashMap<>() {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Long, Job> eldest) {
+            return size() > JOB_HISTORY && eldest.getValue().finishedAt != 0;
+        }
+    };
+
+    private DeleteJobs() {}
+
+    /** 一个删除任务的进度 */
+    private static final class Job {
+        private final long id;
+        private final String sessionId;
+        private final String path;
+        private final long startedAt = System.currentTimeMillis();
+        private final LongAdder files = new LongAdder();
+        private final LongAdder dirs = new LongAdder();
+        private final LongAdder bytes = new LongAdder();
+        private final AtomicInteger errorCount = new AtomicInteger();
+        private final ConcurrentLinkedQueue<String> errors = new ConcurrentLinkedQueue<>();
+        private volatile long finishedAt;
+
+        private Job(long id, String sessionId, String path) {
+            this.id = id;
+            this.sessionId = sessionId;
+            this.path = path;
+        }
+
+        private void error(Path path, Exception e) {
+            if (errorCount.incrementAndGet() <= MAX_ERRORS) {
+                errors.add(path + ": " + e.getClass().getSimpleName() + " " + e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * 提交删除任务
+     * @param sessionId  提交任务的 session
+     * @param label      返回给客户端的路径（相对路径）
+     * @param onFinished 结束后在删除线程中调用（用于同步索引与缓存）
+     */
+    public static long submit(String sessionId, Path dir, String label, Consumer<Path> onFinished) {
+        Job job = new Job(NEXT_ID.getAndIncrement(), sessionId, label);
+        synchronized (JOBS) {
+            JOBS.put(job.id, job);
+        }
+        POOL.execute(() -> {
+            try {
+                POOL.invoke(new DeleteTask(job, dir));
+            } finally {
+                job.finishedAt = System.currentTimeMillis();
+                onFinished.accept(dir);
+            }
+        });
+        return job.id;
+    }
+
+    /** 查询任务进度；state 为 running / done / failed（部分删除失败）；其他 session 的任务视为不存在 */
+    public static ResponseData status(String sessionId, long id) {
+        Job job;
+        synchronized (JOBS) {
+            job = JOBS.get(id);
+        }
+        if (job == null || !job.sessionId.equals(sessionId)) return new ResponseData(404, "Unknown delete job: " + id);
+
+        long end = job.finishedAt == 0 ? System.currentTimeMillis() : job.finishedAt;
+        Map<String, String> map = new HashMap<>();
+        map.put("job", String.valueOf(job.id));
+        map.put("path", job.path);
+        map.put("state", job.finishedAt == 0 ? "running" : job.errorCount.get() == 0 ? "done" : "failed");
+        map.put("filesDeleted", String.valueOf(job.files.sum()));
+        map.put("dirsDeleted", String.valueOf(job.dirs.sum()));
+        map.put("bytesFreed", String.valueOf(job.bytes.sum()));
+        map.put("errorCount", String.valueOf(job.errorCount.get()));
+        map.put("errors", String.join("\n", job.errors));
+        map.put("durationMs", String.valueOf(end - job.startedAt));
+        return ResponseData.success("Delete job status", map);
+    }
+
+    /** 删除一个目录：文件就地删除，子目录各自成为子任务并行删除，最后删除目录本身 */
+    private static final class DeleteTask extends RecursiveAction {
+        private final Job job;
+        private final Path dir;
+
+        private DeleteTask(Job job, Path dir) {
+            this.job = job;
+            this.dir = dir;
+        }
+
+        @Override
+        protected void compute() {
+            List<DeleteTask> subtasks = new ArrayList<>();
+            try (DirectoryStream<Path> stream = Files.newDirectoryStream(dir)) {
+                for (Path child : stream) {
+                    try {
+                        BasicFileAttributes attrs = Files.readAttributes(child, BasicFileAttributes.class, LinkOption.NOFOLLOW_LINKS);
+                        if (attrs.isDirectory()) {
+                            subtasks.add(new DeleteTask(job, child));
+                        } else {
+                            Files.delete(child);
+                            job.files.increment();
+                            job.bytes.add(attrs.size());
+                        }
+                    } catch (IOException e) {
+                        job.error(child, e);
+                    }
+                }
+            } catch (IOException e) {
+                job.error(dir, e);
+                return;
+            }
+            invokeAll(subtasks);
+            try {
+                Files.delete(dir);
+                job.dirs.increment();
+            } catch (IOException e) {
+                job.error(dir, e);
+            }
+        }
+    }
+}
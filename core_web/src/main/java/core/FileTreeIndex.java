@@ -0,0 +1,313 @@
+package core;
+
+import common.utils.ResponseData;
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.regex.Pattern;
+
+/**
+ * FileTreeIndex
+ * ----------------------------------------
+ * 子项目文件树的内存索引，每个项目一份
+ * - 首次访问时遍历一次目录，之后由 WatchService 与 ProjectManager 的写操作增量维护
+ * - 列表直接返回按版本缓存的快照，版本号可作为 ETag 供客户端比较
+ * - 跳过名为 target 的目录（构建输出）
+ * 外部修改（终端、编辑器）由 WatchService 同步，事件丢失（OVERFLOW）时整体重建
+ * 原子写入的临时文件（"." + 文件名 + 随机数字 + ".tmp"）不索引、不通知；
+ * 写操作与 WatchService 事件报告的同一版本文件（大小与修改时间相同）只通知一次
+ */
+public final class FileTreeIndex {
+
+    /** 不索引的目录名 */
+    private static final String EXCLUDED_DIR = "target";
+
+    /** Files.createTempFile(dir, "." + 文件名, ".tmp") 生成的临时文件名 */
+    private static final Pattern TEMP_FILE = Pattern.compile("\\..+\\d+\\.tmp");
+
+    /** 进程启动时间，拼在版本号前，重启后的版本号不会与之前的重复 */
+    private static final String EPOCH = Long.toString(System.currentTimeMillis(), 36);
+
+    private static final Map<String, FileTreeIndex> INDEXES = new ConcurrentHashMap<>();
+    /** 监听中的目录及所属索引 */
+    private record Watched(Path dir, FileTreeIndex owner) {}
+    private static final Map<WatchKey, Watched> WATCHED = new ConcurrentHashMap<>();
+    private static WatchService watchService;
+
+    /** 获取项目的索引，首次调用时建立 */
+    public static FileTreeIndex of(String project) throws IOException {
+        String root = ProjectManager.PROJECTS.get(project);
+        if (root == null) throw new IllegalArgumentException("Unknown project: " + project);
+        FileTreeIndex index = INDEXES.get(project);
+        if (index != null) return index;
+        synchronized (INDEXES) {
+            index = INDEXES.get(project);
+            if (index == null) {
+                index = new FileTreeIndex(Path.of(root).toRealPath());
+                index.rebuild();
+                INDEXES.put(project, index);
+            }
+            return index;
+        }
+    }
+
+    /** 文件的大小与修改时间；文件不存在时为 null */
+    record Stamp(long size, long modifiedNanos) {
+        static Stamp of(Path file) {
+            try {
+                BasicFileAttributes attrs = Files.readAttributes(file, BasicFileAttributes.class);
+                return new Stamp(attrs.size(), attrs.lastModifiedTime().to(TimeUnit.NANOSECONDS));
+            } catch (IOException e) {
+                return null;
+            }
+        }
+    }
+
+    private static final Stamp SCANNED_DIR = new Stamp(-1, -1);
+
+    /** 列表快照：版本号、路径 -> Dir / File、序列化后的 JSON 响应 */
+    public record Snapshot(String version, Map<String, String> files, String json) {}
+
+    private final Path root;
+    /** 相对路径（系统分隔符） -> 是否为目录；重建时整体替换 */
+    private volatile NavigableMap<String, Boolean> entries = new ConcurrentSkipListMap<>();
+    /** 通过 added() 报告过的文件及当时的大小与修改时间；目录为 SCANNED_DIR */
+    private final Map<String, Stamp> reported = new ConcurrentHashMap<>();
+    private final AtomicLong version = new AtomicLong();
+    private final List<Consumer<Path>> listeners = new CopyOnWriteArrayList<>();
+    private volatile Snapshot snapshot;
+
+    private FileTreeIndex(Path root) {
+        this.root = root;
+    }
+
+    /** 当前列表快照，版本未变时直接复用 */
+    public Snapshot snapshot() {
+        Snapshot current = snapshot;
+        String currentVersion = versionString();
+        if (current != null && current.version().equals(currentVersion)) return current;
+        synchronized (this) {
+            currentVersion = versionString();
+            if (snapshot == null || !snapshot.version().equals(currentVersion)) {
+                Map<String, String> map = new HashMap<>();
+                entries.forEach((path, dir) -> map.put(path, dir ? "Dir" : "File"));
+                snapshot = new Snapshot(currentVersion, Collections.unmodifiableMap(map),
+                        ResponseData.success("List file success", map).toJson());
+            }
+            return snapshot;
+        }
+    }
+
+    public String getVersion() {
+        return versionString();
+    }
+
+    public int size() {
+        return entries.size();
+    }
+
+    /** 订阅变化（参数为变化的绝对路径），用于同步其他按路径缓存的数据 */
+    public void addListener(Consumer<Path> listener) {
+        listeners.add(listener);
+    }
+
+    /** 路径被创建或修改（写文件、创建文件或目录后调用），目录会连同子项一起加入 */
+    public void added(Path path) {
+        path = path.toAbsolutePath().normalize();
+        if (!path.startsWith(root) || path.equals(root) || isExcluded(path) || isTemp(path)) return;
+        // 写操作与 WatchService 事件各报告一次，先到的生效
+        if (alreadyReported(path) && entries.containsKey(relative(path))) return;
+        try {
+            if (Files.isDirectory(path)) {
+                scan(path, entries);
+            }
+            // 补上中间目录（createDirectories 一次可能创建多级）
+            for (Path p = path; !p.equals(root); p = p.getParent()) {
+                entries.putIfAbsent(relative(p), Files.isDirectory(p));
+            }
+        } catch (IOException e) {
+            System.err.println("[FileTreeIndex] Index " + path + " failed: " + e.getMessage());
+        }
+        changed(path);
+    }
+
+    /** 目录下（含子目录）已索引的全部文件，相对项目根目录；排除的目录不在其中 */
+    public List<String> filesUnder(Path dir) {
+        dir = dir.toAbsolutePath().normalize();
+        if (!dir.startsWith(root)) return List.of();
+        String separator = dir.getFileSystem().getSeparator();
+        NavigableMap<String, Boolean> children = dir.equals(root) ? entries
+                : entries.subMap(relative(dir) + separator, true,
+                        relative(dir) + (char) (separator.charAt(0) + 1), false);
+        List<String> files = new ArrayList<>();
+        children.forEach((key, isDir) -> {
+            if (!isDir) files.add(key);
+        });
+        return files;
+    }
+
+    /** 路径被删除，目录下的全部子项一并移除 */
+    public void removed(Path path) {
+        path = path.toAbsolutePath().normalize();
+        if (!path.startsWith(root) || path.equals(root) || isTemp(path)) return;
+        String key = relative(path);
+        String separator = path.getFileSystem().getSeparator();
+        entries.remove(key);
+        entries.subMap(key + separator, true, key + (char) (separator.charAt(0) + 1), false).clear();
+        reported.remove(key);
+        reported.keySet().removeIf(k -> k.startsWith(key + separator));
+        changed(path);
+    }
+
+    private void changed(Path path) {
+        version.incrementAndGet();
+        listeners.forEach(listener -> listener.accept(path));
+    }
+
+    private String versionString() {
+        return EPOCH + "-" + version.get();
+    }
+
+    /** 重新遍历整个项目：遍历到新表后整体替换，重建期间读取仍看到旧的文件树 */
+    private void rebuild() throws IOException {
+        NavigableMap<String, Boolean> fresh = new ConcurrentSkipListMap<>();
+        scan(root, fresh);
+        entries = fresh;
+        reported.clear();
+        version.incrementAndGet();
+    }
+
+    /** 遍历目录加入 target，并注册监听 */
+    private void scan(Path dir, NavigableMap<String, Boolean> target) throws IOException {
+        Files.walkFileTree(dir, new SimpleFileVisitor<>() {
+            @Override
+            public FileVisitResult preVisitDirectory(Path d, BasicFileAttributes attrs) throws IOException {
+                if (!d.equals(root) && d.getFileName().toString().equals(EXCLUDED_DIR)) {
+                    return FileVisitResult.SKIP_SUBTREE;
+                }
+                if (!d.equals(root)) target.put(relative(d), true);
+                watch(d, FileTreeIndex.this);
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) {
+                if (!isTemp(file)) target.put(relative(file), false);
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult visitFileFailed(Path file, IOException e) {
+                return FileVisitResult.CONTINUE;
+            }
+        });
+    }
+
+    private static boolean isTemp(Path path) {
+        Path name = path.getFileName();
+        return name != null && TEMP_FILE.matcher(name.toString()).matches();
+    }
+
+    private boolean isExcluded(Path path) {
+        for (Path segment : root.relativize(path)) {
+            if (segment.toString().equals(EXCLUDED_DIR)) return true;
+        }
+        return false;
+    }
+
+    private String relative(Path path) {
+        return root.relativize(path).toString();
+    }
+
+    // ========== WatchService ==========
+
+    private static synchronized void watch(Path dir, FileTreeIndex owner) throws IOException {
+        if (watchService == null) {
+            watchService = FileSystems.getDefault().newWatchService();
+            Thread t = new Thread(FileTreeIndex::watchLoop, "file-tree-watcher");
+            t.setDaemon(true);
+            t.start();
+        }
+        WatchKey key = dir.register(watchService,
+                StandardWatchEventKinds.ENTRY_CREATE,
+                StandardWatchEventKinds.ENTRY_DELETE,
+                StandardWatchEventKinds.ENTRY_MODIFY);
+        WATCHED.put(key, new Watched(dir, owner));
+    }
+
+    /** 处理文件系统事件，把外部修改同步到索引 */
+    private static void watchLoop() {
+        while (true) {
+            WatchKey key;
+            try {
+                key = watchService.take();
+            } catch (InterruptedException | ClosedWatchServiceException e) {
+                return;
+            }
+            Watched watched = WATCHED.get(key);
+            if (watched != null) {
+                for (WatchEvent<?> event : key.pollEvents()) {
+                    try {
+                        watched.owner().handle(watched.dir(), event);
+                    } catch (IOException | RuntimeException e) {
+                        System.err.println("[FileTreeIndex] Handle event failed: " + e.getMessage());
+                    }
+                }
+            }
+            if (!key.reset()) {
+                // 目录已删除或不可访问
+                WATCHED.remove(key);
+            }
+        }
+    }
+
+    /**
+     * 记录本次报告，返回之前是否已报告过同一版本：文件比较大小与修改时间，目录只需遍历并监听一次
+     * （只作为中间目录补上的目录尚未遍历，仍需处理）
+     */
+    private boolean alreadyReported(Path path) {
+        Stamp stamp = Files.isDirectory(path) ? SCANNED_DIR : Stamp.of(path);
+        return stamp != null && stamp.equals(reported.put(relative(path), stamp));
+    }
+
+    private void handle(Path dir, WatchEvent<?> event) throws IOException {
+        if (event.kind() == StandardWatchEventKinds.OVERFLOW) {
+            rebuild();
+            changed(root);
+            return;
+        }
+        Path path = dir.resolve((Path) event.context());
+        if (isTemp(path)) return;
+        String key = relative(path);
+        if (event.kind() == StandardWatchEventKinds.ENTRY_DELETE) {
+            if (Files.exists(path)) return; // 已被重新创建，之后的创建事件会处理
+            removed(path);
+        } else if (event.kind() == StandardWatchEventKinds.ENTRY_CREATE || !entries.containsKey(key)) {
+            added(path);
+        } else if (!alreadyReported(path)) {
+            // 已有文件的内容修改：列表不变，只通知订阅者
+            listeners.forEach(listener -> listener.accept(path));
+        }
+    }
+}
@@ -0,0 +1,102 @@
+package core;
+
+import common.utils.ResponseData;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * FileViewer
+ * ----------------------------------------
+ * 大文件的分页查看：按行号读取一段窗口，不把整个文件读入内存
+ * - 首次查看时内存映射文件并建立稀疏行索引（LineIndex），按修改时间与大小缓存
+ * - 任意行窗口只需从最近的采样点向后扫描，耗时与所在位置、文件大小无关
+ * - 单次返回的文本有字节上限：truncated 表示窗口提前结束，truncatedLines 为被截断的超长行数
+ * 索引只占 (行数 / LineIndex.STRIDE) 个 long，缓存按文件数淘汰
+ */
+public final class FileViewer {
+
+    /** 缓存索引的文件数 */
+    private static final int MAX_INDEXES = Integer.getInteger("core.viewer.maxIndexes", 32);
+
+    /** 单次最多返回的行数 */
+    private static final int MAX_LINES = 2000;
+
+    /** 建立索引时每次映射的字节数 */
+    private static final long MAP_BYTES = 64L * 1024 * 1024;
+
+    private record Indexed(long modifiedNanos, long size, LineIndex index) {}
+
+    /** 访问顺序的 LRU，由自身加锁保护 */
+    private static final LinkedHashMap<Path, Indexed> INDEXES = new LinkedHashMap<>(64, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Path, Indexed> eldest) {
+            return size() > MAX_INDEXES;
+        }
+    };
+
+    private FileViewer() {}
+
+    /**
+     * 读取 [from, from + count) 行
+     * @param from  起始行号（从 1 开始）
+     * @param label 返回给客户端的路径（相对路径）
+     */
+    public static ResponseData view(Path file, String label, long from, int count) {
+        try {
+            if (!Files.isRegularFile(file)) return new ResponseData(404, "File not found: " + label);
+            count = Math.max(1, Math.min(count, MAX_LINES));
+            try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+                LineIndex index = indexFor(file, channel);
+                LineIndex.Window window = index.read(channel, 0, Math.max(0, from - 1), count);
+
+                Map<String, String> map = new HashMap<>();
+                map.put("path", label);
+                map.put("firstLine", String.valueOf(window.firstLine() + 1));
+                map.put("lines", String.valueOf(window.lineCount()));
+                map.put("totalLines", String.valueOf(index.lineCount()));
+                map.put("size", String.valueOf(index.length()));
+                map.put("startOffset", String.valueOf(window.startOffset()));
+                map.put("endOffset", String.valueOf(window.endOffset()));
+                map.put("truncated", String.valueOf(window.truncated()));
+                map.put("truncatedLines", String.valueOf(window.truncatedLines()));
+                map.put("content", window.text());
+                return ResponseData.success("View file success", map);
+            }
+        } catch (Exception e) {
+            return ResponseData.error("View file failed: " + e.getMessage());
+        }
+    }
+
+    /** 缓存的行索引；文件的修改时间或大小变化后重建 */
+    private static LineIndex indexFor(Path file, FileChannel channel) throws IOException {
+        BasicFileAttributes attrs = Files.readAttributes(file, BasicFileAttributes.class);
+        long modified = attrs.lastModifiedTime().to(TimeUnit.NANOSECONDS);
+        synchronized (INDEXES) {
+            Indexed cached = INDEXES.get(file);
+            if (cached != null && cached.modifiedNanos() == modified && cached.size() == attrs.size()) {
+                return cached.index();
+            }
+        }
+
+        // 在锁外建立索引，不阻塞其他文件；同一文件并发首次查看时可能重复建立，结果相同
+        LineIndex index = new LineIndex();
+        long size = channel.size();
+        for (long pos = 0; pos < size; pos += MAP_BYTES) {
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, pos, Math.min(MAP_BYTES, size - pos));
+            index.feed(buffer);
+        }
+        synchronized (INDEXES) {
+            INDEXES.put(file, new Indexed(modified, size, index));
+        }
+        return index;
+    }
+}
@@ -0,0 +1,435 @@
+package core;
+
+import common.utils.ResponseData;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import jdk.jshell.DeclarationSnippet;
+import jdk.jshell.Diag;
+import jdk.jshell.EvalException;
+import jdk.jshell.ExpressionSnippet;
+import jdk.jshell.JShell;
+import jdk.jshell.Snippet;
+import jdk.jshell.SnippetEvent;
+import jdk.jshell.SourceCodeAnalysis;
+import jdk.jshell.VarSnippet;
+
+/**
+ * JShellEngine
+ * ----------------------------------------
+ * 每个 session 一个常驻的 JShell，片段在该 session 独占的子 JVM 中执行（JShell 默认的远程执行）
+ * - 创建 session 的引擎时即启动子 JVM 并预热编译器，之后的求值不再承担启动 JVM 与 Maven 的时间
+ * - 运行 console 项目：把源码按片段载入（去掉 package），只重新求值内容变化的文件，
+ *   依赖它们的片段由 JShell 自动重新编译
+ * - 片段的 System.out / System.err 转发到本次请求；System.in 为请求提供的输入（没有时为空，读到 EOF）
+ * - 片段调用 System.exit、Runtime.exit / halt 等只结束子 JVM，不影响服务器；之后自动启动新的子 JVM（状态丢失）
+ * - 单次执行超过 EVAL_TIMEOUT_MS 时停止执行，停止不了时结束子 JVM
+ * - 每个引擎占一个子 JVM，session 永不过期，空闲超过 IDLE_TTL_MS 的引擎自动关闭
+ */
+public final class JShellEngine {
+
+    /** 全局 JShell 实例数上限 */
+    private static final int MAX_ENGINES = Integer.getInteger("core.jshell.maxEngines", 50);
+
+    /** 单次执行的时间上限（毫秒） */
+    private static final long EVAL_TIMEOUT_MS = TimeUnit.SECONDS.toMillis(Long.getLong("core.jshell.timeoutSeconds", 10));
+
+    /** 单次执行捕获的输出上限（字节），超出部分丢弃 */
+    private static final int MAX_OUTPUT_BYTES = 256 * 1024;
+
+    /** 超时后等待片段响应停止的时间（毫秒），之后结束子 JVM */
+    private static final long STOP_GRACE_MS = 2000;
+
+    private static final String CLOSED_MESSAGE = "JShell engine was closed, please retry";
+
+    /** 子 JVM 的最大堆（MB） */
+    private static final int REMOTE_HEAP_MB = Integer.getInteger("core.jshell.heapMb", 256);
+
+    /** 引擎空闲回收时间（毫秒） */
+    private static final long IDLE_TTL_MS = TimeUnit.MINUTES.toMillis(Long.getLong("core.jshell.idleTtlMinutes", 15));
+
+    private static final Map<String, JShellEngine> ENGINES = new ConcurrentHashMap<>();
+    private static final ScheduledExecutorService WATCHDOG = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread t = new Thread(r, "jshell-watchdog");
+        t.setDaemon(true);
+        return t;
+    });
+
+    static {
+        long checkMs = Math.min(Math.max(1000, IDLE_TTL_MS / 4), TimeUnit.MINUTES.toMillis(1));
+        WATCHDOG.scheduleWithFixedDelay(JShellEngine::evictIdle, checkMs, checkMs, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * 获取或创建 session 的 JShell
+     * @throws IllegalStateException 超出实例数上限
+     */
+    public static JShellEngine open(String sessionId) {
+        JShellEngine engine = ENGINES.get(sessionId);
+        if (engine != null) return engine;
+        synchronized (ENGINES) {
+            engine = ENGINES.get(sessionId);
+            if (engine != null) return engine;
+            if (ENGINES.size() >= MAX_ENGINES) {
+                throw new IllegalStateException("Too many JShell engines on server (max " + MAX_ENGINES + ")");
+            }
+            engine = new JShellEngine();
+            ENGINES.put(sessionId, engine);
+            return engine;
+        }
+    }
+
+    public static JShellEngine get(String sessionId) {
+        return ENGINES.get(sessionId);
+    }
+
+    /** 关闭 session 的 JShell（session 销毁或用户重置时调用） */
+    public static void closeSession(String sessionId) {
+        JShellEngine engine = ENGINES.remove(sessionId);
+        if (engine != null) engine.close();
+    }
+
+    /** 关闭空闲的引擎；正在执行的引擎持有 evalLock，执行结束后才会被检查 */
+    private static void evictIdle() {
+        long deadline = System.currentTimeMillis() - IDLE_TTL_MS;
+        ENGINES.forEach((sessionId, engine) -> {
+            if (engine.lastUsedAt >= deadline) return;
+            synchronized (engine.evalLock) {
+                if (engine.lastUsedAt >= deadline || !ENGINES.remove(sessionId, engine)) return;
+                engine.close();
+            }
+            System.out.println("[JSHELL] Closed idle engine of session " + sessionId);
+        });
+    }
+
+    private final Object evalLock = new Object();
+
+    /** 子 JVM 退出后由 evalLock 保护地替换 */
+    private volatile JShell shell;
+    private volatile boolean exited;
+    /** 已关闭（回收或重置），不再启动子 JVM */
+    private volatile boolean closed;
+    private volatile long lastUsedAt = System.currentTimeMillis();
+
+    /** 当前执行的输出捕获目标，空闲时为 null（子 JVM 残留线程的输出丢弃） */
+    private volatile Capture capture;
+    /** 当前执行的标准输入 */
+    private volatile InputStream input = InputStream.nullInputStream();
+
+    /** 已载入的项目及其源文件 -> 已求值的内容；各项目的类同名（Main），切换项目时全部重新载入 */
+    private String loadedProject;
+    private final Map<Path, String> loadedSources = new HashMap<>();
+
+    private JShellEngine() {
+        shell = startShell();
+    }
+
+    /** 启动子 JVM，加入服务器的 classpath（common 等），并预热编译器与执行通道；预热片段随即删除 */
+    private JShell startShell() {
+        JShell started = JShell.builder()
+                .in(new ForwardingInput())
+                .out(new PrintStream(new ForwardingOutput(false), true, StandardCharsets.UTF_8))
+                .err(new PrintStream(new ForwardingOutput(true), true, StandardCharsets.UTF_8))
+                .remoteVMOptions("-Xmx" + REMOTE_HEAP_MB + "m", "-XX:+UseSerialGC", "-XX:TieredStopAtLevel=1")
+                .build();
+        started.onShutdown(s -> exited = true);
+        started.addToClasspath(System.getProperty("java.class.path"));
+        started.eval("0;").forEach(event -> started.drop(event.snippet()));
+        exited = false;
+        return started;
+    }
+
+    /**
+     * 开始一次使用：记录使用时间，子 JVM 已退出时换一个新的，已载入的项目需要重新载入；调用方持有 evalLock
+     * @return false 表示引擎已被关闭（调用方拿到引擎后恰好被回收），需要重新 open
+     */
+    private boolean begin() {
+        if (closed) return false;
+        lastUsedAt = System.currentTimeMillis();
+        if (!exited) return true;
+        try {
+            shell.close();
+        } catch (RuntimeException ignored) {
+            // 已经关闭
+        }
+        loadedProject = null;
+        loadedSources.clear();
+        shell = startShell();
+        return true;
+    }
+
+    /**
+     * 求值一段代码（可包含多个片段）
+     * @param stdin 片段读取 System.in 时得到的内容，可为 null
+     */
+    public ResponseData eval(String code, String stdin) {
+        if (code == null) return ResponseData.error("Missing code");
+        synchronized (evalLock) {
+            if (!begin()) return ResponseData.error(CLOSED_MESSAGE);
+            Capture capture = new Capture();
+            StringBuilder result = new StringBuilder();
+            long start = System.nanoTime();
+            boolean ok = runCaptured(capture, stdin, () -> evalAll(code, result));
+            return response(ok ? "Eval finished" : "Eval failed", capture, result, start);
+        }
+    }
+
+    /**
+     * 运行 console 项目的 Main
+     * 源码变化的文件重新求值，未变化的文件沿用已有定义；参数取自 @ReflectConsoleArgs
+     * @param stdin 程序读取 System.in 时得到的内容，可为 null
+     */
+    public ResponseData runProject(String project, String stdin) {
+        String projectPath = ProjectManager.PROJECTS.get(project);
+        if (projectPath == null || !project.startsWith("console_")) {
+            return ResponseData.error("Not a console project: " + project);
+        }
+        Path sourceRoot = Path.of(projectPath, "src", "main", "java");
+        List<Path> sources;
+        try (Stream<Path> walk = Files.walk(sourceRoot)) {
+            sources = walk.filter(p -> p.toString().endsWith(".java")).sorted().toList();
+        } catch (IOException e) {
+            return ResponseData.error("Read project sources failed: " + e.getMessage());
+        }
+
+        synchronized (evalLock) {
+            if (!begin()) return ResponseData.error(CLOSED_MESSAGE);
+            Capture capture = new Capture();
+            StringBuilder result = new StringBuilder();
+            long start = System.nanoTime();
+            if (!project.equals(loadedProject)) {
+                loadedSources.clear();
+                loadedProject = project;
+            }
+            int reloaded = 0;
+            boolean ok = true;
+            for (Path source : sources) {
+                String text;
+                try {
+                    text = Files.readString(source);
+                } catch (IOException e) {
+                    return ResponseData.error("Read " + source.getFileName() + " failed: " + e.getMessage());
+                }
+                if (text.equals(loadedSources.get(source))) continue;
+                // 求值失败的文件不记录，下次运行时重新载入
+                if (runCaptured(capture, null, () -> evalAll(stripPackage(text), result))) {
+                    loadedSources.put(source, text);
+                } else {
+                    ok = false;
+                }
+                reloaded++;
+            }
+            if (ok) {
+                ok = runCaptured(capture, stdin, () -> evalAll(
+                        "Main.main(java.util.Optional.ofNullable(Main.class.getMethod(\"main\", String[].class)"
+                                + ".getAnnotation(common.annotations.ReflectConsoleArgs.class))"
+                                + ".map(common.annotations.ReflectConsoleArgs::value).orElse(new String[0]));",
+                        result));
+            }
+            ResponseData response = response(ok ? "Run finished" : "Run failed", capture, result, start);
+            // 程序结束了子 JVM 时，已载入的定义随之丢失
+            if (exited) loadedSources.clear();
+            response.getMap().put("reloaded", String.valueOf(reloaded));
+            return response;
+        }
+    }
+
+    /** 当前定义的变量、方法与类型（JShell 不是线程安全的，与求值互斥） */
+    public ResponseData listSnippets() {
+        synchronized (evalLock) {
+            if (!begin()) return ResponseData.error(CLOSED_MESSAGE);
+            Map<String, String> map = new HashMap<>();
+            try {
+                map.put("vars", shell.variables()
+                        .map(v -> v.typeName() + " " + v.name() + " = " + shell.varValue(v))
+                        .collect(Collectors.joining("\n")));
+                map.put("methods", shell.methods()
+                        .map(m -> m.name() + m.signature())
+                        .collect(Collectors.joining("\n")));
+                map.put("types", shell.types()
+                        .map(t -> t.name())
+                        .collect(Collectors.joining("\n")));
+            } catch (IllegalStateException e) {
+                // 子 JVM 刚刚退出
+                exited = true;
+                return ResponseData.error("JVM exited; state is reset");
+            }
+            return ResponseData.success("Snippets", map);
+        }
+    }
+
+    private void close() {
+        closed = true;
+        shell.stop();
+        shell.close();
+    }
+
+    /**
+     * 逐个片段求值，结果（值或诊断信息）按行写入 result
+     * @return 是否全部成功
+     */
+    private boolean evalAll(String code, StringBuilder result) {
+        SourceCodeAnalysis analysis = shell.sourceCodeAnalysis();
+        String remaining = code;
+        boolean ok = true;
+        while (!remaining.isBlank()) {
+            SourceCodeAnalysis.CompletionInfo info = analysis.analyzeCompletion(remaining);
+            if (!info.completeness().isComplete()) {
+                result.append("Incomplete input: ").append(remaining.strip()).append('\n');
+                return false;
+            }
+            try {
+                for (SnippetEvent event : shell.eval(info.source())) {
+                    ok &= describe(event, result);
+                }
+            } catch (IllegalStateException e) {
+                // 子 JVM 已退出（片段调用了 exit，或超时后被结束）
+                exited = true;
+            }
+            if (exited) {
+                result.append("JVM exited; state is reset\n");
+                return false;
+            }
+            remaining = info.remaining();
+        }
+        return ok;
+    }
+
+    /** 记录一个片段事件，返回是否成功 */
+    private boolean describe(SnippetEvent event, StringBuilder result) {
+        Snippet snippet = event.snippet();
+        if (event.causeSnippet() != null) return true; // 依赖片段的连带更新
+        if (event.exception() != null) {
+            // 子 JVM 中抛出的异常包装为 EvalException，显示原异常类名
+            Throwable e = event.exception();
+            result.append("Exception: ")
+                    .append(e instanceof EvalException eval ? eval.getExceptionClassName() + ": " + eval.getMessage() : e)
+                    .append('\n');
+            return false;
+        }
+        if (event.status() == Snippet.Status.REJECTED) {
+            shell.diagnostics(snippet).forEach(diag -> result.append(formatDiag(snippet, diag)).append('\n'));
+            return false;
+        }
+        if (event.value() != null && !event.value().isEmpty() && snippet.kind() != Snippet.Kind.IMPORT) {
+            String name = snippet instanceof VarSnippet var ? var.name()
+                    : snippet instanceof ExpressionSnippet expr ? expr.name() : "$" + snippet.id();
+            result.append(name).append(" ==> ").append(event.value()).append('\n');
+        } else if (snippet.kind() == Snippet.Kind.TYPE_DECL || snippet.kind() == Snippet.Kind.METHOD) {
+            result.append(event.previousStatus() == Snippet.Status.NONEXISTENT ? "created " : "modified ")
+                    .append(snippet.kind() == Snippet.Kind.METHOD ? "method " : "type ")
+                    .append(((DeclarationSnippet) snippet).name()).append('\n');
+        }
+        return true;
+    }
+
+    private static String formatDiag(Snippet snippet, Diag diag) {
+        String source = snippet.source();
+        long line = source.substring(0, (int) Math.max(0, Math.min(source.length(), diag.getStartPosition())))
+                .chars().filter(c -> c == '\n').count() + 1;
+        return (diag.isError() ? "Error" : "Warning") + " (line " + line + "): " + diag.getMessage(null);
+    }
+
+    /** JShell 片段不能有 package 声明 */
+    private static String stripPackage(String source) {
+        return source.replaceFirst("(?m)^\\s*package\\s+[\\w.]+\\s*;", "");
+    }
+
+    /**
+     * 在捕获输出、提供输入的情况下执行；超时后停止片段，仍不返回（如阻塞在本地调用中）时结束子 JVM
+     * @param stdin 为 null 时 System.in 为空
+     */
+    private boolean runCaptured(Capture capture, String stdin, BooleanSupplier task) {
+        JShell running = shell;
+        ScheduledFuture<?> watchdog = WATCHDOG.schedule(() -> {
+            capture.timedOut = true;
+            running.stop();
+        }, EVAL_TIMEOUT_MS, TimeUnit.MILLISECONDS);
+        ScheduledFuture<?> killer = WATCHDOG.schedule(() -> {
+            exited = true;
+            running.close();
+        }, EVAL_TIMEOUT_MS + STOP_GRACE_MS, TimeUnit.MILLISECONDS);
+        input = stdin == null ? InputStream.nullInputStream()
+                : new ByteArrayInputStream(stdin.getBytes(StandardCharsets.UTF_8));
+        this.capture = capture;
+        try {
+            return task.getAsBoolean() && !capture.timedOut;
+        } finally {
+            this.capture = null;
+            input = InputStream.nullInputStream();
+            watchdog.cancel(false);
+            killer.cancel(false);
+        }
+    }
+
+    private static ResponseData response(String message, Capture capture, StringBuilder result, long start) {
+        if (capture.timedOut) result.append("Stopped: exceeded ").append(EVAL_TIMEOUT_MS / 1000).append("s\n");
+        Map<String, String> map = new HashMap<>();
+        map.put("out", capture.out.toString(StandardCharsets.UTF_8));
+        map.put("err", capture.err.toString(StandardCharsets.UTF_8));
+        map.put("result", result.toString());
+        map.put("durationMs", String.valueOf((System.nanoTime() - start) / 1_000_000));
+        return ResponseData.success(message, map);
+    }
+
+    /** 一次执行的输出 */
+    private static final class Capture {
+        private final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        private final ByteArrayOutputStream err = new ByteArrayOutputStream();
+        private volatile boolean timedOut;
+    }
+
+    /** 子 JVM 的 System.out / System.err：写入当前执行的捕获目标，空闲时丢弃 */
+    private final class ForwardingOutput extends OutputStream {
+        private final boolean stderr;
+
+        private ForwardingOutput(boolean stderr) {
+            this.stderr = stderr;
+        }
+
+        @Override
+        public void write(int b) {
+            write(new byte[] {(byte) b}, 0, 1);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+            Capture current = capture;
+            if (current == null) return;
+            ByteArrayOutputStream target = stderr ? current.err : current.out;
+            synchronized (target) {
+                target.write(b, off, Math.max(0, Math.min(len, MAX_OUTPUT_BYTES - target.size())));
+            }
+        }
+    }
+
+    /** 子 JVM 的 System.in：读取当前执行的输入，从不阻塞 */
+    private final class ForwardingInput extends InputStream {
+        @Override
+        public int read() throws IOException {
+            return input.read();
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            return input.read(b, off, len);
+        }
+    }
+}
@@ -0,0 +1,65 @@
+package core;
+
+import jakarta.servlet.http.HttpServlet;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.util.Map;
+
+import common.utils.ResponseData;
+
+/**
+ * JShellServlet
+ * ----------------------------------------
+ * session 内 JShell 的 JSON 接口
+ * - GET  /jshell?action=list                → 当前定义的变量、方法、类型
+ * - GET  /jshell?action=run&project=<项目>&input= → 运行 console 项目的 Main（只重新载入变化的源文件，input 为标准输入）
+ * - GET  /jshell?action=reset               → 丢弃当前 JShell 的全部状态
+ * - POST /jshell?action=eval&code=<代码>&input= → 按片段求值（表单提交，input 为标准输入）
+ */
+public class JShellServlet extends HttpServlet {
+
+    @Override
+    protected void doGet(HttpServletRequest req, HttpServletResponse resp) throws IOException {
+        String action = req.getParameter("action");
+        String sessionId = req.getSession(true).getId();
+
+        try {
+            switch (action) {
+                case "list" -> {
+                    JShellEngine engine = JShellEngine.get(sessionId);
+                    if (engine == null) {
+                        ResponseData.success("Snippets", Map.of()).sendJson(resp);
+                    } else {
+                        engine.listSnippets().sendJson(resp);
+                    }
+                }
+                case "run" -> JShellEngine.open(sessionId).runProject(req.getParameter("project"), req.getParameter("input")).sendJson(resp);
+                case "reset" -> {
+                    JShellEngine.closeSession(sessionId);
+                    ResponseData.success("JShell is reset", Map.of("SID", sessionId)).sendJson(resp);
+                }
+                default -> ResponseData.error("Unknown GET action: " + action).sendJson(resp);
+            }
+        } catch (Exception e) {
+            ResponseData.error("JShell servlet error cause : " + e.getMessage()).sendJson(resp);
+        }
+    }
+
+    @Override
+    protected void doPost(HttpServletRequest req, HttpServletResponse resp) throws IOException {
+        String action = req.getParameter("action");
+        String sessionId = req.getSession(true).getId();
+
+        try {
+            switch (action) {
+                case "eval" -> {
+                    JShellEngine.open(sessionId).eval(req.getParameter("code"), req.getParameter("input")).sendJson(resp);
+                }
+                default -> ResponseData.error("Unknown POST action: " + action).sendJson(resp);
+            }
+        } catch (Exception e) {
+            ResponseData.error("JShell servlet error cause : " + e.getMessage()).sendJson(resp);
+        }
+    }
+}
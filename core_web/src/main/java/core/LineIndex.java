@@ -0,0 +1,188 @@
+package core;
+
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * LineIndex
+ * ----------------------------------------
+ * 稀疏行偏移索引：每 STRIDE 行记录一次行首字节偏移
+ * - 定位任意行只需从最近的采样点向后扫描不超过 STRIDE 行，与文件大小无关
+ * - 索引本身只占 (行数 / STRIDE) 个 long，可随追加的数据增量更新
+ * - 读取通过内存映射完成，不把整个文件读入堆；单次返回的文本与单行都有字节上限
+ */
+public class LineIndex {
+
+    /** 采样间隔（行） */
+    public static final int STRIDE = 1024;
+
+    /** 单次读取返回的最大字节数，超出时窗口提前结束（truncated） */
+    private static final int MAX_WINDOW_BYTES = Integer.getInteger("core.viewer.maxBytes", 1024 * 1024);
+
+    /** 单行返回的最大字节数，超出部分不返回（计入 truncatedLines） */
+    private static final int MAX_LINE_BYTES = Integer.getInteger("core.viewer.maxLineBytes", 64 * 1024);
+
+    /** 扫描时每次映射的字节数 */
+    private static final long MAP_BYTES = 64L * 1024 * 1024;
+
+    /**
+     * 一段行窗口：文本、起始行号、实际行数、字节范围
+     * truncated 表示因 MAX_WINDOW_BYTES 提前结束（可从 firstLine + lineCount 继续读取），
+     * truncatedLines 为超过 MAX_LINE_BYTES 被截断的行数
+     */
+    public record Window(String text, long firstLine, int lineCount, long startOffset, long endOffset,
+                         boolean truncated, int truncatedLines) {}
+
+    private long[] samples = new long[16]; // samples[i] = 第 i * STRIDE 行的行首偏移
+    private int sampleCount = 1;           // samples[0] = 0
+    private long newlines = 0;
+    private long lastLineStart = 0;        // 最后一个换行符之后的偏移
+    private long length = 0;
+
+    /** 追加数据（必须按文件顺序连续输入） */
+    public synchronized void feed(byte[] data, int offset, int length) {
+        for (int i = 0; i < length; i++) {
+            if (data[offset + i] == '\n') newline(this.length + i + 1);
+        }
+        this.length += length;
+    }
+
+    /** 追加数据（position 到 limit 之间的字节） */
+    public synchronized void feed(MappedByteBuffer data) {
+        int start = data.position();
+        int end = data.limit();
+        for (int i = start; i < end; i++) {
+            if (data.get(i) == '\n') newline(this.length + i - start + 1);
+        }
+        this.length += end - start;
+    }
+
+    private void newline(long nextLineStart) {
+        newlines++;
+        lastLineStart = nextLineStart;
+        if (newlines % STRIDE == 0) {
+            if (sampleCount == samples.length) samples = Arrays.copyOf(samples, sampleCount * 2);
+            samples[sampleCount++] = nextLineStart;
+        }
+    }
+
+    /** 总行数（最后一行没有换行符也计入） */
+    public synchronized long lineCount() {
+        return newlines + (length > lastLineStart ? 1 : 0);
+    }
+
+    /** 已索引的字节数 */
+    public synchronized long length() {
+        return length;
+    }
+
+    /**
+     * 从 channel 读取 [fromLine, fromLine + count) 行
+     * 返回的文本不超过 MAX_WINDOW_BYTES，第一行超出时截断该行，之后的行超出时窗口在该行之前结束
+     * @param base 索引中偏移 0 对应的文件位置
+     * @throws IOException 采样点之后找不到 fromLine（文件在索引后被截短）
+     */
+    public Window read(FileChannel channel, long base, long fromLine, int count) throws IOException {
+        long sampleLine;
+        long sampleOffset;
+        long indexedLength;
+        boolean pastEnd;
+        synchronized (this) {
+            fromLine = Math.max(0, Math.min(fromLine, lineCount()));
+            pastEnd = fromLine == lineCount();
+            int sample = (int) Math.min(fromLine / STRIDE, sampleCount - 1);
+            sampleLine = (long) sample * STRIDE;
+            sampleOffset = samples[sample];
+            indexedLength = length;
+        }
+        if (pastEnd) return new Window("", fromLine, 0, indexedLength, indexedLength, false, 0);
+
+        // 从采样点跳到 fromLine（不超过 STRIDE 行，但行可能很长，分段映射）
+        Scanner scanner = new Scanner(channel, base, sampleOffset, indexedLength);
+        for (long line = sampleLine; line < fromLine; ) {
+            int b = scanner.next();
+            if (b < 0) throw new IOException("Line " + (fromLine + 1) + " not found; file changed while reading");
+            if (b == '\n') line++;
+        }
+        long start = scanner.position();
+        if (count <= 0) return new Window("", fromLine, 0, start, start, false, 0);
+
+        int limit = (int) Math.min(MAX_WINDOW_BYTES, indexedLength - start);
+        byte[] out = new byte[limit + 1]; // 多一个字节放最后一行的换行符
+        int size = 0;
+        int lines = 0;
+        int truncatedLines = 0;
+        boolean truncated = false;
+        long lineStart = start;
+        while (lines < count) {
+            if (size >= limit && lines > 0) {
+                truncated = lineStart < indexedLength;
+                break;
+            }
+            int lineOut = size;
+            int lineCap = Math.min(lineOut + MAX_LINE_BYTES, limit);
+            boolean cut = false;
+            int b;
+            while ((b = scanner.next()) >= 0 && b != '\n') {
+                if (size < lineCap) {
+                    out[size++] = (byte) b;
+                } else if (lines > 0 && limit - lineOut < MAX_LINE_BYTES) {
+                    // 窗口放不下这一行：在它之前结束，留给下一次读取
+                    truncated = true;
+                    break;
+                } else {
+                    cut = true; // 超长的行只保留开头，其余跳过
+                }
+            }
+            if (truncated) {
+                size = lineOut;
+                break;
+            }
+            if (b < 0 && scanner.position() == lineStart) break; // 文件末尾
+            if (cut) {
+                size = lineOut + TerminalExecutor.completeUtf8Length(out, lineOut, size - lineOut);
+                truncatedLines++;
+            }
+            if (b == '\n') out[size++] = '\n';
+            lines++;
+            lineStart = scanner.position();
+            if (b < 0) break; // 末尾没有换行符的一行
+        }
+        return new Window(new String(out, 0, size, StandardCharsets.UTF_8), fromLine, lines,
+                start, lineStart, truncated, truncatedLines);
+    }
+
+    /** 顺序读取 [position, end) 的字节，按 MAP_BYTES 分段映射 */
+    private static final class Scanner {
+        private final FileChannel channel;
+        private final long base;
+        private final long end;
+        private long position;
+        private MappedByteBuffer buffer;
+        private long bufferStart;
+
+        private Scanner(FileChannel channel, long base, long position, long end) {
+            this.channel = channel;
+            this.base = base;
+            this.position = position;
+            this.end = end;
+        }
+
+        /** 下一个字节（0 ~ 255），结束时为 -1 */
+        private int next() throws IOException {
+            if (position >= end) return -1;
+            if (buffer == null || position - bufferStart >= buffer.limit()) {
+                bufferStart = position;
+                buffer = channel.map(FileChannel.MapMode.READ_ONLY, base + position, Math.min(MAP_BYTES, end - position));
+            }
+            return buffer.get((int) (position++ - bufferStart)) & 0xFF;
+        }
+
+        private long position() {
+            return position;
+        }
+    }
+}
@@ -0,0 +1,177 @@
+package core;
+
+import common.utils.ResponseData;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+
+/**
+ * ModuleScaffolder
+ * ----------------------------------------
+ * 在进程内创建子项目（与 scripts/create_web.sh、create_console.sh 生成相同的文件）
+ * - 模板位于 classpath 的 /templates/<类型>/，替换 ${MODULE_NAME}、${PROJECT_NAME}、${PORT}
+ * - 先在同级的临时目录中生成全部文件，再一次重命名为模块目录，其他请求看不到生成了一半的模块
+ * - 加入父 pom.xml 的 modules 并登记到 ProjectManager.PROJECTS，无需重启
+ * - 父 pom.xml 为所有人共用：全局限速（两次成功创建至少间隔 core.module.minIntervalSeconds 秒），每次请求都记录日志
+ * 不执行 mvn package，首次运行前需要构建
+ */
+public final class ModuleScaffolder {
+
+    /** web 子项目端口的起始值（与 create_web.sh 一致） */
+    private static final int BASE_PORT = 10000;
+
+    /** 两次成功创建之间的最小间隔 */
+    private static final long MIN_INTERVAL_MS = Long.getLong("core.module.minIntervalSeconds", 60) * 1000;
+
+    private static final Pattern NAME = Pattern.compile("[A-Za-z][A-Za-z0-9]{0,31}");
+    private static final Pattern PORT = Pattern.compile("@ReflectWebServerArgs\\(\\s*port\\s*=\\s*(\\d+)");
+
+    /** 模板文件 -> 模块内路径 */
+    private static final Map<String, List<String[]>> TEMPLATES = Map.of(
+            "web", List.of(
+                    new String[] {"WebServer.java.tmpl", "src/main/java/web/WebServer.java"},
+                    new String[] {"WebServerImpl.java.tmpl", "src/main/java/web/WebServerImpl.java"},
+                    new String[] {"home.html.tmpl", "src/main/resources/home.html"},
+                    new String[] {"WebServerTest.java.tmpl", "src/test/java/web/WebServerTest.java"},
+                    new String[] {"pom.xml.tmpl", "pom.xml"}),
+            "console", List.of(
+                    new String[] {"Main.java.tmpl", "src/main/java/console/Main.java"},
+                    new String[] {"MainTest.java.tmpl", "src/test/java/console/MainTest.java"},
+                    new String[] {"pom.xml.tmpl", "pom.xml"}));
+
+    /** 上次成功创建的时间（由 ModuleScaffolder.class 保护） */
+    private static long lastCreatedAt;
+
+    private ModuleScaffolder() {}
+
+    /**
+     * 创建子项目
+     * @param sessionId  发起请求的 session（用于日志）
+     * @param remoteAddr 客户端地址（用于日志）
+     * @param type web 或 console
+     * @param name 项目名（字母开头的字母数字），模块名为 type_name
+     */
+    public static ResponseData create(String sessionId, String remoteAddr, String type, String name) {
+        System.out.println("[MODULE] Session " + sessionId + " from " + remoteAddr + " requested " + type + "_" + name);
+        if (type == null || !TEMPLATES.containsKey(type)) return new ResponseData(400, "Unknown module type: " + type);
+        if (name == null || !NAME.matcher(name).matches()) return new ResponseData(400, "Invalid project name: " + name);
+        String module = type + "_" + name;
+        long start = System.nanoTime();
+
+        // 端口分配、目录重命名与 pom 修改需串行
+        synchronized (ModuleScaffolder.class) {
+            long wait = lastCreatedAt + MIN_INTERVAL_MS - System.currentTimeMillis();
+            if (lastCreatedAt > 0 && wait > 0) {
+                System.out.println("[MODULE] Rejected " + module + " of session " + sessionId + ": rate limited");
+                return new ResponseData(429, "Too many modules created, retry in " + (wait + 999) / 1000 + "s");
+            }
+            Path parent = ProjectManager.parentDir();
+            Path target = parent.resolve(module);
+            if (Files.exists(target) || ProjectManager.PROJECTS.containsKey(module)) {
+                return new ResponseData(409, "Module already exists: " + module);
+            }
+            Path staging = null;
+            try {
+                int port = "web".equals(type) ? nextPort() : 0;
+                staging = Files.createTempDirectory(parent, "." + module + "-");
+                for (String[] template : TEMPLATES.get(type)) {
+                    String content = template(type, template[0])
+                            .replace("${MODULE_NAME}", module)
+                            .replace("${PROJECT_NAME}", name)
+                            .replace("${PORT}", String.valueOf(port));
+                    Path file = staging.resolve(template[1]);
+                    Files.createDirectories(file.getParent());
+                    Files.writeString(file, content, StandardCharsets.UTF_8);
+                }
+                // 临时目录默认只有所有者可访问
+                try {
+                    Files.setPosixFilePermissions(staging, PosixFilePermissions.fromString("rwxr-xr-x"));
+                } catch (UnsupportedOperationException ignored) {
+                    // 非 POSIX 文件系统
+                }
+                Files.move(staging, target, StandardCopyOption.ATOMIC_MOVE);
+                staging = null;
+
+                addToParentPom(parent.resolve("pom.xml"), module);
+                ProjectManager.register(module, target);
+                lastCreatedAt = System.currentTimeMillis();
+                System.out.println("[MODULE] Session " + sessionId + " from " + remoteAddr + " created module " + module);
+
+                Map<String, String> map = new HashMap<>();
+                map.put("module", module);
+                map.put("path", target.toString());
+                map.put("durationMs", String.valueOf((System.nanoTime() - start) / 1_000_000));
+                if (port > 0) map.put("port", String.valueOf(port));
+                return ResponseData.success("Module created: " + module, map);
+            } catch (Exception e) {
+                System.err.println("[ModuleScaffolder] Create " + module + " failed: " + e.getMessage());
+                return ResponseData.error("Create module failed: " + e.getMessage());
+            } finally {
+                if (staging != null) deleteTree(staging);
+            }
+        }
+    }
+
+    /** 已有 web 子项目中最大的端口 + 1（没有时为 BASE_PORT） */
+    private static int nextPort() throws IOException {
+        int max = BASE_PORT - 1;
+        for (Map.Entry<String, String> e : ProjectManager.PROJECTS.entrySet()) {
+            if (!e.getKey().startsWith("web_")) continue;
+            Path impl = Path.of(e.getValue(), "src/main/java/web/WebServerImpl.java");
+            if (!Files.isRegularFile(impl)) continue;
+            Matcher m = PORT.matcher(Files.readString(impl, StandardCharsets.UTF_8));
+            if (m.find()) max = Math.max(max, Integer.parseInt(m.group(1)));
+        }
+        return max + 1;
+    }
+
+    private static String template(String type, String name) throws IOException {
+        try (InputStream in = ModuleScaffolder.class.getResourceAsStream("/templates/" + type + "/" + name)) {
+            if (in == null) throw new IOException("Missing template: " + type + "/" + name);
+            return new String(in.readAllBytes(), StandardCharsets.UTF_8);
+        }
+    }
+
+    /** 在 </modules> 前加入模块（已存在时不修改），写临时文件后原子替换 */
+    private static void addToParentPom(Path pom, String module) throws IOException {
+        if (!Files.isRegularFile(pom)) return;
+        String content = Files.readString(pom, StandardCharsets.UTF_8);
+        if (content.contains("<module>" + module + "</module>")) return;
+        int end = content.indexOf("</modules>");
+        if (end < 0) return;
+        int lineStart = content.lastIndexOf('\n', end) + 1;
+        String updated = content.substring(0, lineStart) + "        <module>" + module + "</module>\n" + content.substring(lineStart);
+
+        Path temp = Files.createTempFile(pom.getParent(), ".pom", ".tmp");
+        try {
+            Files.writeString(temp, updated, StandardCharsets.UTF_8);
+            ProjectManager.moveIntoPlace(temp, pom);
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+
+    private static void deleteTree(Path dir) {
+        try (Stream<Path> paths = Files.walk(dir)) {
+            paths.sorted((a, b) -> b.compareTo(a)).forEach(p -> {
+                try {
+                    Files.deleteIfExists(p);
+                } catch (IOException ignored) {
+                    // 尽量清理
+                }
+            });
+        } catch (IOException ignored) {
+            // 目录不存在
+        }
+    }
+}
@@ -0,0 +1,94 @@
+package core;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * OutputRingBuffer
+ * 按字节预算的终端输出环形缓冲区
+ * - seq 为已写入字节的绝对位置（单调递增），客户端可凭 seq 续读
+ * - 写满后覆盖最旧数据，落后的游标读取时得到被丢弃的字节数
+ * - 读取时最多拷贝两段连续字节，统一解码一次
+ */
+public class OutputRingBuffer {
+
+    /** 一次读取的结果：文本、下一个游标、因落后而丢弃的字节数 */
+    public record Chunk(String text, long nextSeq, long dropped) {
+        public boolean isEmpty() {
+            return text.isEmpty() && dropped == 0;
+        }
+    }
+
+    private final byte[] buffer;
+    private long head = 0; // 下一个写入位置（累计写入字节数）
+
+    public OutputRingBuffer(int capacity) {
+        this.buffer = new byte[capacity];
+    }
+
+    /** 写入字节，返回写入后的 seq */
+    public synchronized long append(byte[] data, int offset, int length) {
+        // 超过容量的部分只保留末尾
+        if (length > buffer.length) {
+            head += length - buffer.length;
+            offset += length - buffer.length;
+            length = buffer.length;
+        }
+        int pos = (int) (head % buffer.length);
+        int first = Math.min(length, buffer.length - pos);
+        System.arraycopy(data, offset, buffer, pos, first);
+        System.arraycopy(data, offset + first, buffer, 0, length - first);
+        head += length;
+        return head;
+    }
+
+    /** 读取 seq 之后的全部数据 */
+    public synchronized Chunk readFrom(long seq) {
+        return readRange(seq, Long.MAX_VALUE);
+    }
+
+    /** 读取 [seq, end) 范围内的数据，end 超过写入位置时读到当前末尾 */
+    public synchronized Chunk readRange(long seq, long end) {
+        long limit = Math.min(end, head);
+        long tail = tail();
+        long dropped = 0;
+        if (seq < tail) {
+            long requested = seq;
+            // 起点可能落在被覆盖行的中间，跳到下一行开头；没有完整行时至少跳过 UTF-8 续字节
+            seq = tail;
+            while (seq < limit && !(seq > tail && byteAt(seq - 1) == '\n')) {
+                seq++;
+            }
+            if (seq >= limit) {
+                seq = tail;
+                while (seq < limit && (byteAt(seq) & 0xC0) == 0x80) {
+                    seq++;
+                }
+            }
+            dropped = seq - requested;
+        }
+        if (seq >= limit) {
+            return new Chunk("", Math.max(seq, limit), dropped);
+        }
+
+        int length = (int) (limit - seq);
+        int pos = (int) (seq % buffer.length);
+        int first = Math.min(length, buffer.length - pos);
+        byte[] bytes = new byte[length];
+        System.arraycopy(buffer, pos, bytes, 0, first);
+        System.arraycopy(buffer, 0, bytes, first, length - first);
+        return new Chunk(new String(bytes, StandardCharsets.UTF_8), limit, dropped);
+    }
+
+    private byte byteAt(long seq) {
+        return buffer[(int) (seq % buffer.length)];
+    }
+
+    /** 最旧的仍可读取的 seq */
+    public synchronized long tail() {
+        return Math.max(0, head - buffer.length);
+    }
+
+    public synchronized long head() {
+        return head;
+    }
+}
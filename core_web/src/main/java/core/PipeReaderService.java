@@ -0,0 +1,165 @@
+package core;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * PipeReaderService
+ * ----------------------------------------
+ * 所有终端共享的管道读取服务
+ * - 少量读取线程轮流排空已注册的进程管道（available() 非阻塞探测），不再为每个流占用一个阻塞线程
+ * - 无数据时按指数退避休眠（最长 MAX_IDLE_PARK_MS），有数据立即继续读取
+ * - 注册数量受 MAX_PIPES 限制，可通过 getActivePipes() 观察当前活跃管道数
+ */
+public final class PipeReaderService {
+
+    /** 管道数据接收方 */
+    public interface PipeSink {
+        /** 收到数据（data 在回调返回后会被复用） */
+        void onData(byte[] data, int offset, int length);
+
+        /** 管道结束（进程退出且数据已读完，或读取出错） */
+        void onClose(IOException error);
+    }
+
+    /** 读取线程数 */
+    private static final int READER_THREADS = Integer.getInteger("core.pipe.readerThreads", 2);
+
+    /** 同时注册的管道上限（每个终端 2 个） */
+    private static final int MAX_PIPES = Integer.getInteger("core.pipe.maxPipes", 400);
+
+    /** 单次读取的缓冲大小 */
+    private static final int READ_BUFFER_BYTES = 8192;
+
+    /** 空闲时最长休眠时间（毫秒），决定无数据时的最大推送延迟 */
+    private static final long MAX_IDLE_PARK_MS = 16;
+
+    private static final PipeReaderService INSTANCE = new PipeReaderService();
+
+    public static PipeReaderService getInstance() {
+        return INSTANCE;
+    }
+
+    /** 已注册的管道 */
+    public static final class Pipe {
+        private final InputStream in;
+        private final Process owner;
+        private final PipeSink sink;
+        private volatile boolean closed = false;
+
+        private Pipe(InputStream in, Process owner, PipeSink sink) {
+            this.in = in;
+            this.owner = owner;
+            this.sink = sink;
+        }
+    }
+
+    private final List<Worker> workers = new ArrayList<>();
+    private final AtomicInteger activePipes = new AtomicInteger();
+
+    private PipeReaderService() {
+        for (int i = 0; i < READER_THREADS; i++) {
+            Worker worker = new Worker();
+            Thread t = new Thread(worker, "pipe-reader-" + i);
+            t.setDaemon(true);
+            t.start();
+            workers.add(worker);
+        }
+    }
+
+    /**
+     * 注册进程管道
+     * @param in    进程的 stdout 或 stderr
+     * @param owner 所属进程，进程退出且管道读空后自动注销
+     * @throws IOException 已达到管道上限
+     */
+    public Pipe register(InputStream in, Process owner, PipeSink sink) throws IOException {
+        if (activePipes.incrementAndGet() > MAX_PIPES) {
+            activePipes.decrementAndGet();
+            throw new IOException("Too many active pipes (max " + MAX_PIPES + ")");
+        }
+        Pipe pipe = new Pipe(in, owner, sink);
+        Worker target = workers.get(0);
+        for (Worker w : workers) {
+            if (w.pipes.size() < target.pipes.size()) target = w;
+        }
+        target.pipes.add(pipe);
+        LockSupport.unpark(target.thread);
+        return pipe;
+    }
+
+    /** 注销管道（不再回调 onClose） */
+    public void unregister(Pipe pipe) {
+        if (pipe == null || pipe.closed) return;
+        pipe.closed = true;
+        for (Worker w : workers) {
+            if (w.pipes.remove(pipe)) activePipes.decrementAndGet();
+        }
+    }
+
+    public int getActivePipes() {
+        return activePipes.get();
+    }
+
+    public int getMaxPipes() {
+        return MAX_PIPES;
+    }
+
+    /** 读取线程：循环排空分配给自己的管道 */
+    private final class Worker implements Runnable {
+        private final CopyOnWriteArrayList<Pipe> pipes = new CopyOnWriteArrayList<>();
+        private volatile Thread thread;
+
+        @Override
+        public void run() {
+            thread = Thread.currentThread();
+            byte[] buffer = new byte[READ_BUFFER_BYTES];
+            long parkMs = 1;
+            while (true) {
+                boolean progressed = false;
+                for (Pipe pipe : pipes) {
+                    progressed |= drain(pipe, buffer);
+                }
+                if (progressed) {
+                    parkMs = 1;
+                } else {
+                    LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(parkMs));
+                    parkMs = Math.min(parkMs * 2, MAX_IDLE_PARK_MS);
+                }
+            }
+        }
+
+        /** 读取一个管道当前可用的数据，返回是否读到数据 */
+        private boolean drain(Pipe pipe, byte[] buffer) {
+            if (pipe.closed) return false;
+            try {
+                int available = pipe.in.available();
+                if (available > 0) {
+                    int n = pipe.in.read(buffer, 0, Math.min(available, buffer.length));
+                    if (n > 0) {
+                        pipe.sink.onData(buffer, 0, n);
+                        return true;
+                    }
+                    if (n < 0) finish(pipe, null);
+                } else if (!pipe.owner.isAlive() && pipe.in.available() == 0) {
+                    finish(pipe, null);
+                }
+            } catch (IOException e) {
+                finish(pipe, e);
+            }
+            return false;
+        }
+
+        private void finish(Pipe pipe, IOException error) {
+            if (pipe.closed) return;
+            unregister(pipe);
+            pipe.sink.onClose(error);
+        }
+    }
+}
@@ -1,21 +1,38 @@
 package core;
 
 import java.io.File;
+import java.io.FilterInputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
 import java.nio.file.Files;
+import java.nio.file.LinkOption;
 import java.nio.file.Path;
 import java.nio.file.Paths;
-import java.nio.file.StandardOpenOption;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.security.DigestOutputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Comparator;
 import java.util.HashMap;
+import java.util.HexFormat;
+import java.util.List;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.stream.Collectors;
-import java.util.stream.Stream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
 
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
 import common.utils.ResponseData;
-import jakarta.servlet.ServletInputStream;
 
 /**
  * ProjectService
@@ -25,12 +42,12 @@ import jakarta.servlet.ServletInputStream;
 public class ProjectManager {
 
     private static final File PARENT_DIR = new File(".");
+    /** 项目名 -> 绝对路径；运行中可由 register / refreshModules 更新 */
     public static final Map<String, String> PROJECTS;
 
     static {
         PROJECTS = Arrays.stream(PARENT_DIR.listFiles())
-                .filter(File::isDirectory)
-                .filter(dir -> dir.getName().startsWith("web_") || dir.getName().startsWith("console_"))
+                .filter(ProjectManager::isModuleDir)
                 .collect(Collectors.toMap(
                         File::getName,
                         File::getAbsolutePath,
@@ -39,6 +56,50 @@ public class ProjectManager {
                 ));
     }
 
+    private static boolean isModuleDir(File dir) {
+        return dir.isDirectory() && (dir.getName().startsWith("web_") || dir.getName().startsWith("console_"));
+    }
+
+    /** 子项目所在的父目录 */
+    static Path parentDir() {
+        return PARENT_DIR.toPath().toAbsolutePath().normalize();
+    }
+
+    /** 登记新建的子项目（见 ModuleScaffolder） */
+    static void register(String module, Path dir) {
+        PROJECTS.put(module, new File(PARENT_DIR, dir.getFileName().toString()).getAbsolutePath());
+    }
+
+    /** 同步父目录中的子项目：加入外部脚本新建的目录，移除已不存在的目录 */
+    public static void refreshModules() {
+        File[] dirs = PARENT_DIR.listFiles();
+        if (dirs == null) return;
+        Map<String, String> found = new HashMap<>();
+        for (File dir : dirs) {
+            if (isModuleDir(dir)) found.put(dir.getName(), dir.getAbsolutePath());
+        }
+        found.forEach(PROJECTS::putIfAbsent);
+        PROJECTS.keySet().retainAll(found.keySet());
+    }
+
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
+    /** readFile 一次读取的最大字节数 */
+    private static final long MAX_READ_BYTES = Long.getLong("core.read.maxBytes", 8L * 1024 * 1024);
+
+    /** 目录分页的最大条数 */
+    private static final int MAX_PAGE_SIZE = 1000;
+
+    /** 一次解压出的最大总字节数（解压后，不是压缩包大小） */
+    private static final long MAX_UNZIP_BYTES = Long.getLong("core.unzip.maxBytes", 256L * 1024 * 1024);
+
+    /** 文件写入锁（按路径哈希分段） */
+    private static final Object[] WRITE_LOCKS = new Object[64];
+
+    static {
+        Arrays.setAll(WRITE_LOCKS, i -> new Object());
+    }
+
     /** 当前项目名 */
     private final String project;
 
@@ -53,42 +114,292 @@ public class ProjectManager {
         return this.project;
     }
 
+    /**
+     * 解析项目内的相对路径
+     * 拒绝越出项目目录的路径（../、绝对路径、指向项目外的符号链接）
+     */
+    public Path resolvePath(String relativePath) throws IOException {
+        if (relativePath == null) throw new IllegalArgumentException("Missing path");
+        Path root = Paths.get(PROJECTS.get(this.project)).toRealPath();
+        Path path = root.resolve(relativePath).normalize();
+        if (!path.startsWith(root)) {
+            throw new IllegalArgumentException("Path outside project: " + relativePath);
+        }
+        // 已存在的部分解析符号链接后再检查
+        Path existing = path;
+        while (existing != null && !Files.exists(existing)) existing = existing.getParent();
+        if (existing != null && !existing.toRealPath().startsWith(root)) {
+            throw new IllegalArgumentException("Path outside project: " + relativePath);
+        }
+        return path;
+    }
+
     // ========== 文件编辑功能 ==========
+    /** 读取整个文件；超过 MAX_READ_BYTES 的文件拒绝读取，应使用 view 分页查看（见 FileViewer） */
     public ResponseData readFile(String relativePath) {
         try {
-            Path filePath = Paths.get(PROJECTS.get(this.project), relativePath);
+            Path filePath = resolvePath(relativePath);
+            if (Files.size(filePath) > MAX_READ_BYTES) {
+                return new ResponseData(413, "File too large to read at once, use action=view: " + relativePath);
+            }
             return ResponseData.success("Read file success", Map.of(
                                         "file", relativePath,
-                                        "content", Files.readString(filePath)
+                                        "content", ContentCache.getInstance().read(filePath)
                                         ));
         } catch (Exception e) {
             return ResponseData.error("[ProjectManager]" + e.getMessage());
         }
     }
 
-    public ResponseData writeFile(String relativePath, ServletInputStream inputStream) {
+    /**
+     * 写入整个文件，返回新内容的 SHA-256（作为之后增量保存的基准版本）
+     * 与 durability（达到的持久化保证，见 WriteDurability）
+     */
+    public ResponseData writeFile(String relativePath, InputStream inputStream) {
         try {
-            Path filePath = Paths.get(PROJECTS.get(this.project), relativePath);
+            Path filePath = resolvePath(relativePath);
             Files.createDirectories(filePath.getParent());
 
-            // 使用 try-with-resources 自动关闭流
-            try (OutputStream out = Files.newOutputStream(filePath,
-                    StandardOpenOption.CREATE,
-                    StandardOpenOption.TRUNCATE_EXISTING)) {
-                inputStream.transferTo(out); // 返回写入字节数
+            Written written;
+            synchronized (lockFor(filePath)) {
+                written = atomicWrite(filePath, inputStream::transferTo);
             }
+            fileTree().added(filePath);
+            ContentCache.getInstance().invalidate(filePath);
 
-            return ResponseData.success("Write file success: " + relativePath, Map.of());
+            return ResponseData.success("Write file success: " + relativePath, Map.of(
+                    "sha256", written.sha256(),
+                    "durability", written.durability()
+            ));
         } catch (Exception e) {
             return ResponseData.error("Write file failed: " + e.getMessage());
         }
     }
 
+    /**
+     * 增量保存：请求体为 {"base": 基准内容的 SHA-256, "edits": [{"start", "end", "text"}]}
+     * - start / end 为基准内容中的字符位置（UTF-16，与浏览器的字符串一致），各段不能重叠，也不能落在代理对中间
+     * - 文件已不是基准版本时返回 409 与当前的 SHA-256，客户端需重新读取
+     * - 写入临时文件后原子替换，读取方不会看到写了一半的文件
+     */
+    public ResponseData patchFile(String relativePath, InputStream body) {
+        try {
+            Path filePath = resolvePath(relativePath);
+            JsonNode request = MAPPER.readTree(body);
+            String base = request.path("base").asText("");
+            List<Edit> edits = new ArrayList<>();
+            for (JsonNode edit : request.path("edits")) {
+                edits.add(new Edit(edit.path("start").asInt(-1), edit.path("end").asInt(-1), edit.path("text").asText("")));
+            }
+            if (!Files.isRegularFile(filePath)) {
+                return new ResponseData(404, "File not found: " + relativePath);
+            }
+
+            Written written;
+            int size;
+            synchronized (lockFor(filePath)) {
+                byte[] current = Files.readAllBytes(filePath);
+                String currentSha = sha256Hex(current);
+                if (!currentSha.equalsIgnoreCase(base)) {
+                    return new ResponseData(409, "File changed since base version", Map.of("sha256", currentSha));
+                }
+                byte[] patched = applyEdits(new String(current, StandardCharsets.UTF_8), edits)
+                        .getBytes(StandardCharsets.UTF_8);
+                size = patched.length;
+                written = atomicWrite(filePath, out -> out.write(patched));
+            }
+            fileTree().added(filePath);
+            ContentCache.getInstance().invalidate(filePath);
+
+            return ResponseData.success("Patch file success: " + relativePath, Map.of(
+                    "sha256", written.sha256(),
+                    "size", String.valueOf(size),
+                    "edits", String.valueOf(edits.size()),
+                    "durability", written.durability()
+            ));
+        } catch (IllegalArgumentException | JsonProcessingException e) {
+            return new ResponseData(400, "Invalid patch: " + e.getMessage());
+        } catch (Exception e) {
+            return ResponseData.error("Patch file failed: " + e.getMessage());
+        }
+    }
+
+    /**
+     * 把上传的 zip 流解压到项目目录中，边读边写，不缓存整个压缩包
+     * - 每个条目的路径都经过 resolvePath 检查，拒绝越出项目的条目（zip slip）
+     * - 文件逐个原子替换；解压出的总字节数超过 core.unzip.maxBytes 时中止，已写入的文件保留
+     */
+    public ResponseData extractZip(String relativeDir, InputStream body) {
+        int files = 0;
+        int dirs = 0;
+        Path dir = null;
+        try {
+            dir = resolvePath(relativeDir == null ? "" : relativeDir);
+            Files.createDirectories(dir);
+            try (ZipInputStream zip = new ZipInputStream(body)) {
+                // 统计解压出的字节数（而非压缩后的请求体），各条目累计
+                LimitedInputStream limited = new LimitedInputStream(zip, MAX_UNZIP_BYTES);
+                ZipEntry entry;
+                while ((entry = zip.getNextEntry()) != null) {
+                    Path target = resolvePath(relativePath(dir.resolve(entry.getName()).normalize()));
+                    if (!target.startsWith(dir)) {
+                        throw new IllegalArgumentException("Entry outside target directory: " + entry.getName());
+                    }
+                    if (entry.isDirectory()) {
+                        Files.createDirectories(target);
+                        dirs++;
+                        continue;
+                    }
+                    Files.createDirectories(target.getParent());
+                    synchronized (lockFor(target)) {
+                        atomicWrite(target, limited::transferTo);
+                    }
+                    files++;
+                }
+                return ResponseData.success("Extract zip success", Map.of(
+                        "directory", relativeDir == null ? "" : relativeDir,
+                        "files", String.valueOf(files),
+                        "dirs", String.valueOf(dirs),
+                        "bytes", String.valueOf(limited.count())
+                ));
+            }
+        } catch (IllegalArgumentException e) {
+            return new ResponseData(400, "Invalid zip: " + e.getMessage());
+        } catch (Exception e) {
+            return ResponseData.error("Extract zip failed after " + files + " files: " + e.getMessage());
+        } finally {
+            if (dir != null && (files > 0 || dirs > 0)) {
+                try {
+                    fileTree().added(dir);
+                } catch (IOException ignored) {
+                    // WatchService 会补上
+                }
+                ContentCache.getInstance().invalidate(dir);
+            }
+        }
+    }
+
+    private String relativePath(Path absolute) throws IOException {
+        return resolvePath("").relativize(absolute).toString();
+    }
+
+    /** 统计读取的字节数，超过上限时抛出异常（包在解压流外面，防止压缩炸弹） */
+    private static final class LimitedInputStream extends FilterInputStream {
+        private final long limit;
+        private long count;
+
+        LimitedInputStream(InputStream in, long limit) {
+            super(in);
+            this.limit = limit;
+        }
+
+        long count() {
+            return count;
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            if (b >= 0) add(1);
+            return b;
+        }
+
+        @Override
+        public int read(byte[] buf, int off, int len) throws IOException {
+            int n = super.read(buf, off, len);
+            if (n > 0) add(n);
+            return n;
+        }
+
+        private void add(long n) throws IOException {
+            count += n;
+            if (count > limit) throw new IOException("Extracted content exceeds " + limit + " bytes");
+        }
+    }
+
+    /** 一段替换：基准内容的 [start, end) 替换为 text */
+    record Edit(int start, int end, String text) {}
+
+    static String applyEdits(String content, List<Edit> edits) {
+        List<Edit> sorted = new ArrayList<>(edits);
+        sorted.sort(Comparator.comparingInt(Edit::start));
+        StringBuilder sb = new StringBuilder(content.length());
+        int pos = 0;
+        for (Edit edit : sorted) {
+            if (edit.start() < pos || edit.end() < edit.start() || edit.end() > content.length()
+                    || splitsSurrogatePair(content, edit.start()) || splitsSurrogatePair(content, edit.end())) {
+                throw new IllegalArgumentException("bad range [" + edit.start() + ", " + edit.end() + ")");
+            }
+            sb.append(content, pos, edit.start()).append(edit.text());
+            pos = edit.end();
+        }
+        return sb.append(content, pos, content.length()).toString();
+    }
+
+    /** index 位于一个代理对的两半之间（在此处切分会留下孤立的代理字符，编码为 UTF-8 时变成 '?'） */
+    private static boolean splitsSurrogatePair(String content, int index) {
+        return index > 0 && index < content.length()
+                && Character.isHighSurrogate(content.charAt(index - 1)) && Character.isLowSurrogate(content.charAt(index));
+    }
+
+    /** 写入结果：内容的 SHA-256 与达到的持久化保证 */
+    private record Written(String sha256, String durability) {}
+
+    /**
+     * 先写同目录下的临时文件，再原子替换目标文件，按部署配置刷盘（见 WriteDurability）
+     */
+    private static Written atomicWrite(Path target, ContentWriter writer) throws IOException {
+        Path temp = Files.createTempFile(target.getParent(), "." + target.getFileName(), ".tmp");
+        try {
+            MessageDigest digest = newSha256();
+            try (OutputStream out = new DigestOutputStream(Files.newOutputStream(temp), digest)) {
+                writer.write(out);
+            }
+            String durability = WriteDurability.getInstance().commit(temp, target);
+            return new Written(HexFormat.of().formatHex(digest.digest()), durability);
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+
+    /** 把写好的临时文件（与目标同目录）原子替换为目标文件 */
+    static void moveIntoPlace(Path temp, Path target) throws IOException {
+        // 临时文件默认只有所有者可读写，沿用原文件的权限（新文件为 rw-r--r--）
+        try {
+            Files.setPosixFilePermissions(temp, Files.exists(target)
+                    ? Files.getPosixFilePermissions(target)
+                    : PosixFilePermissions.fromString("rw-r--r--"));
+        } catch (UnsupportedOperationException ignored) {
+            // 非 POSIX 文件系统
+        }
+        Files.move(temp, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    private interface ContentWriter {
+        void write(OutputStream out) throws IOException;
+    }
+
+    private static String sha256Hex(byte[] bytes) {
+        return HexFormat.of().formatHex(newSha256().digest(bytes));
+    }
+
+    private static MessageDigest newSha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /** 同一文件的写入串行执行（按路径分段加锁） */
+    static Object lockFor(Path path) {
+        return WRITE_LOCKS[Math.floorMod(path.hashCode(), WRITE_LOCKS.length)];
+    }
 
     // ========== 文件管理功能 ==========
     public ResponseData createFile(String relativePath) {
         try {
-            Path filePath = Paths.get(PROJECTS.get(this.project), relativePath);
+            Path filePath = resolvePath(relativePath);
 
             // 确保父目录存在
             Files.createDirectories(filePath.getParent());
@@ -100,6 +411,8 @@ public class ProjectManager {
 
             // 创建新文件
             Files.createFile(filePath);
+            fileTree().added(filePath);
+            ContentCache.getInstance().invalidate(filePath);
             String content = this.generateDefaultContent(relativePath);
 
             return ResponseData.success("File created successfully", Map.of(
@@ -114,7 +427,7 @@ public class ProjectManager {
     
     public ResponseData createDirectory(String relativePath) {
         try {
-            Path dirPath = Paths.get(PROJECTS.get(this.project), relativePath);
+            Path dirPath = resolvePath(relativePath);
 
             // 如果目录已存在
             if (Files.exists(dirPath)) {
@@ -127,6 +440,7 @@ public class ProjectManager {
 
             // 创建多级目录
             Files.createDirectories(dirPath);
+            fileTree().added(dirPath);
 
             return ResponseData.success("Directory created successfully", Map.of(
                     "directory", relativePath
@@ -136,31 +450,40 @@ public class ProjectManager {
         }
     }
 
-    public ResponseData deletePath(String relativePath) {
+    /**
+     * 删除文件或目录
+     * 目录在后台并行删除（见 DeleteJobs），立即返回任务编号，进度由同一 session 的 delete_status 查询
+     */
+    public ResponseData deletePath(String sessionId, String relativePath) {
         try {
-            Path path = Paths.get(PROJECTS.get(this.project), relativePath);
+            Path path = resolvePath(relativePath);
 
-            if (!Files.exists(path)) {
+            if (!Files.exists(path, LinkOption.NOFOLLOW_LINKS)) {
                 return ResponseData.error("Path not found: " + relativePath);
             }
+            if (path.equals(resolvePath(""))) {
+                return ResponseData.error("Cannot delete the project root");
+            }
 
-            // 递归删除目录或单个文件
-            if (Files.isDirectory(path)) {
-                Files.walk(path)
-                    .sorted((a, b) -> b.compareTo(a)) // 先删除子文件，再删父目录
-                    .forEach(p -> {
-                        try {
-                            Files.deleteIfExists(p);
-                        } catch (IOException e) {
-                            throw new RuntimeException("Failed to delete: " + p + " - " + e.getMessage());
-                        }
-                    });
-                return ResponseData.success("Directory deleted successfully", Map.of(
+            if (Files.isDirectory(path, LinkOption.NOFOLLOW_LINKS)) {
+                FileTreeIndex tree = fileTree();
+                long job = DeleteJobs.submit(sessionId, path, relativePath, dir -> {
+                    // 部分删除失败时按剩余内容重新索引
+                    if (Files.exists(dir)) {
+                        tree.added(dir);
+                    } else {
+                        tree.removed(dir);
+                    }
+                    ContentCache.getInstance().invalidate(dir);
+                });
+                return ResponseData.success("Directory delete started", Map.of(
                         "directory", relativePath,
-                        "absolutePath", path.toAbsolutePath().toString()
+                        "job", String.valueOf(job)
                 ));
             } else {
                 Files.delete(path);
+                fileTree().removed(path);
+                ContentCache.getInstance().invalidate(path);
                 return ResponseData.success("File deleted successfully", Map.of(
                         "file", relativePath,
                         "absolutePath", path.toAbsolutePath().toString()
@@ -175,35 +498,99 @@ public class ProjectManager {
     // ========== 项目管理功能 ==========
 
     /**
-     * 获取子项目列表
+     * 获取子项目列表（先与父目录同步）
      */
     public static ResponseData listModules() {
+        refreshModules();
         return ResponseData.success("Sub projects", PROJECTS);
     }
 
     /**
-     * 获取子项目文件树（不含 target 和 pom.xml）
+     * 获取子项目文件树（不含 target 目录），来自内存索引的快照
      */
     public ResponseData listProjectFiles() {
         try {
-            Path root = Paths.get(PROJECTS.get(this.project));
-            try (Stream<Path> stream = Files.walk(root)) {
-                return ResponseData.success("List file success", stream
-                        .filter(path -> !path.toString().contains("target"))  
-                        .filter(path -> !path.equals(root))
-                        .collect(Collectors.toMap(
-                            path -> root.relativize(path).toString(),
-                            path -> Files.isDirectory(path) ? "Dir" : "File",
-                            (oldVal, newVal) -> oldVal, 
-                            HashMap::new
-                        ))
-                    );
+            return ResponseData.success("List file success", fileTree().snapshot().files());
+        } catch (Exception e) {
+            return ResponseData.error(e.getMessage());
+        }
+    }
+
+    /**
+     * 列出目录的直接子项（目录在前，按名称排序），分页返回
+     * - 一次 DirectoryStream 遍历读取名称与 BasicFileAttributes
+     * - cursor 为上一页最后一项的排序键，目录内容变化时翻页不会重复或跳过
+     * - 本页中的子目录再各自统计子项数量
+     */
+    public ResponseData listDirectory(String relativePath, String cursor, int limit) {
+        try {
+            Path dir = resolvePath(relativePath == null ? "" : relativePath);
+            if (!Files.isDirectory(dir)) {
+                return new ResponseData(404, "Directory not found: " + relativePath);
+            }
+            limit = Math.max(1, Math.min(limit, MAX_PAGE_SIZE));
+
+            List<DirEntry> entries = new ArrayList<>();
+            try (DirectoryStream<Path> stream = Files.newDirectoryStream(dir)) {
+                for (Path child : stream) {
+                    BasicFileAttributes attrs = Files.readAttributes(child, BasicFileAttributes.class);
+                    String name = child.getFileName().toString();
+                    if (attrs.isDirectory() && name.equals("target")) continue;
+                    entries.add(new DirEntry(child, name, attrs));
+                }
             }
+            entries.sort(Comparator.comparing(DirEntry::sortKey));
+
+            List<Map<String, String>> items = new ArrayList<>();
+            String last = null;
+            for (DirEntry entry : entries) {
+                if (cursor != null && entry.sortKey().compareTo(cursor) <= 0) continue;
+                if (items.size() == limit) break;
+                Map<String, String> item = new HashMap<>();
+                item.put("name", entry.name());
+                item.put("type", entry.attrs().isDirectory() ? "Dir" : "File");
+                item.put("size", String.valueOf(entry.attrs().size()));
+                item.put("mtime", String.valueOf(entry.attrs().lastModifiedTime().toMillis()));
+                if (entry.attrs().isDirectory()) item.put("children", String.valueOf(countChildren(entry.path())));
+                items.add(item);
+                last = entry.sortKey();
+            }
+
+            Map<String, String> map = new HashMap<>();
+            map.put("path", relativePath == null ? "" : relativePath);
+            map.put("total", String.valueOf(entries.size()));
+            boolean more = last != null && !entries.get(entries.size() - 1).sortKey().equals(last);
+            if (more) map.put("nextCursor", last);
+            return ResponseData.success("List directory success", map, items);
+        } catch (IllegalArgumentException e) {
+            return new ResponseData(400, e.getMessage());
         } catch (Exception e) {
             return ResponseData.error(e.getMessage());
         }
     }
 
+    /** 目录项；排序键让目录排在文件之前 */
+    private record DirEntry(Path path, String name, BasicFileAttributes attrs) {
+        String sortKey() {
+            return (attrs.isDirectory() ? "D:" : "F:") + name;
+        }
+    }
+
+    private static int countChildren(Path dir) {
+        int count = 0;
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(dir)) {
+            for (Path ignored : stream) count++;
+        } catch (IOException e) {
+            return -1;
+        }
+        return count;
+    }
+
+    /** 当前项目的文件树索引 */
+    public FileTreeIndex fileTree() throws IOException {
+        return FileTreeIndex.of(this.project);
+    }
+
     // ========== 工具 ==========
     /**
      * 根据文件扩展名生成默认内容
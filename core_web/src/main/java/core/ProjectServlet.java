@@ -4,6 +4,10 @@ import jakarta.servlet.ServletException;
 import jakarta.servlet.http.*;
 
 import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
 
@@ -32,8 +36,20 @@ public class ProjectServlet extends HttpServlet {
      * 处理 GET 请求
      * -------------------------------
      * 支持的 endpoint：
-     * - /project?action=list     → 获取项目列表
-     * - /project?action=delete&id=<项目ID> → 删除项目
+     * - /project?action=projects                       → 获取项目列表
+     * - /project?action=cache_stats                    → 文件内容缓存的命中、淘汰计数
+     * - /project?action=list&project=<项目>             → 获取项目文件树（ETag 为索引版本，未变化时返回 304）
+     * - /project?action=list_dir&project=<项目>&path=&cursor=&limit= → 目录的直接子项（分页，含大小、修改时间、子项数）
+     * - /project?action=search&q=&regex=1&case=1&project= → 全文搜索（不带 project 时搜索全部项目）
+     * - /project?action=symbols&name=&kind=&project=    → 查找包、类、方法、字段的定义位置（不带 project 时查询全部项目）
+     * - /project?action=usages&name=&project=          → 查找标识符的引用位置
+     * - /project?action=delete_status&job=<任务>       → 本 session 的目录删除任务的进度与错误报告
+     * - /project?action=snapshots&project=<项目>        → 项目的快照列表
+     * - /project?action=upload_status&upload=<编号>     → 分块上传的进度与缺少的块
+     * - /project?action=read_file&project=<项目>&path=  → 读取文件
+     * - /project?action=view&project=<项目>&path=&from=&count= → 大文件分页查看（from 为起始行号，从 1 开始）
+     * - /project?action=raw&project=<项目>&path=        → 原样返回文件内容（支持 ETag / Range）
+     * - /project?action=zip&project=<项目>&path=a&path=b  → 把所选文件、目录打包成 zip 流式返回（不带 path 时打包整个项目）
      */
     @Override
     protected void doGet(HttpServletRequest req, HttpServletResponse resp)
@@ -43,24 +59,121 @@ public class ProjectServlet extends HttpServlet {
         String sessionId = session.getId();
         switch (action) {
             case "projects" -> ProjectManager.listModules().sendJson(resp);
+            case "cache_stats" -> ResponseData.success("Content cache stats", ContentCache.getInstance().stats()).sendJson(resp);
             case "list" -> {
-                String project = req.getParameter("project");
-                ProjectManager pm = MANAGER_MAP.get(sessionId);
+                ProjectManager pm = managerFor(sessionId, req.getParameter("project"));
+                if (pm == null) {
+                    ResponseData.error("Unknown project: " + req.getParameter("project")).sendJson(resp);
+                    return;
+                }
+                FileTreeIndex.Snapshot snapshot = pm.fileTree().snapshot();
+                String etag = "\"" + snapshot.version() + "\"";
+                // 浏览器每次都带 If-None-Match 验证，文件树未变化时不重发
+                resp.setHeader("Cache-Control", "no-cache");
+                resp.setHeader("ETag", etag);
+                if (etag.equals(req.getHeader("If-None-Match"))) {
+                    resp.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+                    return;
+                }
+                resp.setStatus(HttpServletResponse.SC_OK);
+                resp.setContentType("application/json; charset=UTF-8");
+                resp.getWriter().write(snapshot.json());
+            }
+            case "search" -> {
+                String limit = req.getParameter("limit");
+                SearchIndex.search(req.getParameter("project"), req.getParameter("q"),
+                        "1".equals(req.getParameter("regex")), "1".equals(req.getParameter("case")),
+                        limit == null ? 200 : Integer.parseInt(limit)).sendJson(resp);
+            }
+            case "symbols" -> SymbolIndex.definitions(req.getParameter("project"), req.getParameter("name"),
+                    req.getParameter("kind")).sendJson(resp);
+            case "usages" -> SymbolIndex.usages(req.getParameter("project"), req.getParameter("name")).sendJson(resp);
+            case "snapshots" -> ProjectSnapshots.list(req.getParameter("project")).sendJson(resp);
+            case "delete_status" -> DeleteJobs.status(sessionId, Long.parseLong(req.getParameter("job"))).sendJson(resp);
+            case "upload_status" -> ChunkedUploads.getInstance().status(sessionId, req.getParameter("upload")).sendJson(resp);
+            case "list_dir" -> {
+                ProjectManager pm = managerFor(sessionId, req.getParameter("project"));
                 if (pm == null) {
-                    pm = new ProjectManager(project);
-                    MANAGER_MAP.put(sessionId, pm);
+                    ResponseData.error("Unknown project: " + req.getParameter("project")).sendJson(resp);
+                    return;
                 }
-                pm.listProjectFiles().sendJson(resp);
+                String limit = req.getParameter("limit");
+                pm.listDirectory(req.getParameter("path"), req.getParameter("cursor"),
+                        limit == null ? 200 : Integer.parseInt(limit)).sendJson(resp);
             }
             case "read_file" -> {
                 String project = req.getParameter("project");
                 ProjectManager pm = MANAGER_MAP.get(sessionId);
-                if (pm == null || pm.getProject().equals(project)) {
+                if (pm == null || !pm.getProject().equals(project)) {
                     ResponseData.error("Project [" + project + "] does not match sessionID").sendJson(resp);
                     return; 
                 }
                 pm.readFile(req.getParameter("path")).sendJson(resp);
             }
+            case "view" -> {
+                String project = req.getParameter("project");
+                ProjectManager pm = MANAGER_MAP.get(sessionId);
+                if (pm == null || !pm.getProject().equals(project)) {
+                    ResponseData.error("Project [" + project + "] does not match sessionID").sendJson(resp);
+                    return;
+                }
+                String path = req.getParameter("path");
+                Path file;
+                try {
+                    file = pm.resolvePath(path);
+                } catch (IllegalArgumentException e) {
+                    new ResponseData(HttpServletResponse.SC_BAD_REQUEST, e.getMessage()).sendJson(resp);
+                    return;
+                }
+                String from = req.getParameter("from");
+                String count = req.getParameter("count");
+                FileViewer.view(file, path, from == null ? 1 : Long.parseLong(from),
+                        count == null ? 200 : Integer.parseInt(count)).sendJson(resp);
+            }
+            case "raw" -> {
+                String project = req.getParameter("project");
+                ProjectManager pm = MANAGER_MAP.get(sessionId);
+                if (pm == null || !pm.getProject().equals(project)) {
+                    ResponseData.error("Project [" + project + "] does not match sessionID").sendJson(resp);
+                    return;
+                }
+                Path file;
+                try {
+                    file = pm.resolvePath(req.getParameter("path"));
+                } catch (IllegalArgumentException e) {
+                    new ResponseData(HttpServletResponse.SC_BAD_REQUEST, e.getMessage()).sendJson(resp);
+                    return;
+                }
+                if (!Files.isRegularFile(file)) {
+                    new ResponseData(HttpServletResponse.SC_NOT_FOUND, "File not found: " + req.getParameter("path")).sendJson(resp);
+                    return;
+                }
+                RawContent.send(req, resp, file, getServletContext().getMimeType(file.getFileName().toString()));
+            }
+            case "zip" -> {
+                String project = req.getParameter("project");
+                ProjectManager pm = MANAGER_MAP.get(sessionId);
+                if (pm == null || !pm.getProject().equals(project)) {
+                    ResponseData.error("Project [" + project + "] does not match sessionID").sendJson(resp);
+                    return;
+                }
+                String[] paths = req.getParameterValues("path");
+                List<Path> selected = new ArrayList<>();
+                try {
+                    for (String path : paths == null ? new String[] {""} : paths) {
+                        Path resolved = pm.resolvePath(path);
+                        if (!Files.exists(resolved)) {
+                            new ResponseData(HttpServletResponse.SC_NOT_FOUND, "Path not found: " + path).sendJson(resp);
+                            return;
+                        }
+                        selected.add(resolved);
+                    }
+                } catch (IllegalArgumentException e) {
+                    new ResponseData(HttpServletResponse.SC_BAD_REQUEST, e.getMessage()).sendJson(resp);
+                    return;
+                }
+                ZipTransfer.send(resp, pm.resolvePath(""), selected, project + ".zip");
+            }
             default -> ResponseData.error("Unknown GET action: " + action).sendJson(resp);
         }
     }
@@ -69,7 +182,21 @@ public class ProjectServlet extends HttpServlet {
      * 处理 POST 请求
      * -------------------------------
      * 支持的 endpoint：
-     * - /project?action=add&id=<项目ID>&name=<项目名称>
+     * - /project?action=write_file&project=<项目>&path=   → 请求体写入文件
+     * - /project?action=patch&project=<项目>&path=        → 增量保存（JSON：基准 SHA-256 + 替换段）
+     * - /project?action=unzip&project=<项目>&path=<目录>  → 请求体为 zip，边读边解压到目录中
+     * - /project?action=upload_start&project=<项目>&path=&size=&chunkSize= → 开始分块上传，返回上传编号
+     * - /project?action=upload_chunk&upload=<编号>&index=&sha256=  → 请求体为一块内容
+     * - /project?action=upload_commit&upload=<编号>      → 全部块收到后原子替换目标文件
+     * - /project?action=upload_abort&upload=<编号>       → 放弃上传
+     * - /project?action=create_module&type=web|console&name=<名称> → 由模板创建子项目并立即登记（无需重启，需已打开项目；全局限速，过快返回 429）
+     * - /project?action=compile&project=<项目>&full=1    → 进程内增量编译 src/main/java，返回结构化诊断（full=1 时全量编译）
+     * - /project?action=snapshot&project=<项目>&label=  → 拍快照（只有变化的文件计算哈希、写入存储）
+     * - /project?action=restore&project=<项目>&snapshot= → 恢复到快照
+     * - /project?action=snapshot_delete&project=<项目>&snapshot= → 删除快照并清理不再引用的内容
+     * - /project?action=create_file&project=<项目>&path=  → 创建文件（按扩展名生成模板）
+     * - /project?action=create_dir&project=<项目>&path=   → 创建目录
+     * - /project?action=delete&project=<项目>&path=       → 删除文件；目录在后台删除，返回任务编号
      */
     @Override
     protected void doPost(HttpServletRequest req, HttpServletResponse resp)
@@ -81,13 +208,113 @@ public class ProjectServlet extends HttpServlet {
             case "write_file" -> {
                 String project = req.getParameter("project");
                 ProjectManager pm = MANAGER_MAP.get(sessionId);
-                if (pm == null || pm.getProject().equals(project)) {
+                if (pm == null || !pm.getProject().equals(project)) {
                     ResponseData.error("Project does not match sessionID").sendJson(resp);
                     return;
                 }
                 pm.writeFile(req.getParameter("path"), req.getInputStream()).sendJson(resp);
             }
+            case "patch" -> {
+                String project = req.getParameter("project");
+                ProjectManager pm = MANAGER_MAP.get(sessionId);
+                if (pm == null || !pm.getProject().equals(project)) {
+                    ResponseData.error("Project does not match sessionID").sendJson(resp);
+                    return;
+                }
+                pm.patchFile(req.getParameter("path"), req.getInputStream()).sendJson(resp);
+            }
+            case "unzip" -> {
+                String project = req.getParameter("project");
+                ProjectManager pm = MANAGER_MAP.get(sessionId);
+                if (pm == null || !pm.getProject().equals(project)) {
+                    ResponseData.error("Project does not match sessionID").sendJson(resp);
+                    return;
+                }
+                pm.extractZip(req.getParameter("path"), req.getInputStream()).sendJson(resp);
+            }
+            case "upload_start" -> {
+                String project = req.getParameter("project");
+                ProjectManager pm = MANAGER_MAP.get(sessionId);
+                if (pm == null || !pm.getProject().equals(project)) {
+                    ResponseData.error("Project does not match sessionID").sendJson(resp);
+                    return;
+                }
+                String chunkSize = req.getParameter("chunkSize");
+                ChunkedUploads.getInstance().start(sessionId, pm, req.getParameter("path"),
+                        Long.parseLong(req.getParameter("size")),
+                        chunkSize == null ? 0 : Integer.parseInt(chunkSize)).sendJson(resp);
+            }
+            case "upload_chunk" -> ChunkedUploads.getInstance().writeChunk(sessionId, req.getParameter("upload"),
+                    Integer.parseInt(req.getParameter("index")), req.getParameter("sha256"), req.getInputStream()).sendJson(resp);
+            case "upload_commit" -> ChunkedUploads.getInstance().commit(sessionId, req.getParameter("upload")).sendJson(resp);
+            case "upload_abort" -> ChunkedUploads.getInstance().abort(sessionId, req.getParameter("upload")).sendJson(resp);
+            case "create_module" -> {
+                // 修改所有人共用的父 pom.xml：需要已打开项目的 session，并由 ModuleScaffolder 限速、记录日志
+                if (MANAGER_MAP.get(sessionId) == null) {
+                    ResponseData.error("No project opened in this session").sendJson(resp);
+                    return;
+                }
+                ModuleScaffolder.create(sessionId, req.getRemoteAddr(),
+                        req.getParameter("type"), req.getParameter("name")).sendJson(resp);
+            }
+            case "compile" -> {
+                String project = req.getParameter("project");
+                ProjectManager pm = MANAGER_MAP.get(sessionId);
+                if (pm == null || !pm.getProject().equals(project)) {
+                    ResponseData.error("Project does not match sessionID").sendJson(resp);
+                    return;
+                }
+                CompileService.compile(project, "1".equals(req.getParameter("full"))).sendJson(resp);
+            }
+            case "snapshot" -> {
+                String project = req.getParameter("project");
+                ProjectManager pm = MANAGER_MAP.get(sessionId);
+                if (pm == null || !pm.getProject().equals(project)) {
+                    ResponseData.error("Project does not match sessionID").sendJson(resp);
+                    return;
+                }
+                ProjectSnapshots.snapshot(project, req.getParameter("label")).sendJson(resp);
+            }
+            case "restore" -> {
+                String project = req.getParameter("project");
+                ProjectManager pm = MANAGER_MAP.get(sessionId);
+                if (pm == null || !pm.getProject().equals(project)) {
+                    ResponseData.error("Project does not match sessionID").sendJson(resp);
+                    return;
+                }
+                ProjectSnapshots.restore(project, req.getParameter("snapshot"), pm.fileTree()).sendJson(resp);
+            }
+            case "snapshot_delete" -> {
+                String project = req.getParameter("project");
+                ProjectManager pm = MANAGER_MAP.get(sessionId);
+                if (pm == null || !pm.getProject().equals(project)) {
+                    ResponseData.error("Project does not match sessionID").sendJson(resp);
+                    return;
+                }
+                ProjectSnapshots.delete(project, req.getParameter("snapshot")).sendJson(resp);
+            }
+            case "create_file", "create_dir", "delete" -> {
+                String project = req.getParameter("project");
+                ProjectManager pm = MANAGER_MAP.get(sessionId);
+                if (pm == null || !pm.getProject().equals(project)) {
+                    ResponseData.error("Project does not match sessionID").sendJson(resp);
+                    return;
+                }
+                String path = req.getParameter("path");
+                switch (action) {
+                    case "create_file" -> pm.createFile(path).sendJson(resp);
+                    case "create_dir" -> pm.createDirectory(path).sendJson(resp);
+                    default -> pm.deletePath(sessionId, path).sendJson(resp);
+                }
+            }
             default -> ResponseData.error("Unknown POST action: " + action).sendJson(resp);
         }
     }
+
+    /** 获取 session 当前项目的 ProjectManager，切换项目时替换；项目不存在时返回 null */
+    private static ProjectManager managerFor(String sessionId, String project) {
+        if (project == null || !ProjectManager.PROJECTS.containsKey(project)) return null;
+        return MANAGER_MAP.compute(sessionId, (id, pm) ->
+                pm != null && pm.getProject().equals(project) ? pm : new ProjectManager(project));
+    }
 }
@@ -0,0 +1,462 @@
+package core;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import common.utils.ResponseData;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.stream.Stream;
+
+/**
+ * ProjectSnapshots
+ * ----------------------------------------
+ * 子项目的快照与恢复，基于按内容寻址的文件存储
+ * - blobs/：文件内容按 SHA-256 存放，相同内容只存一份（各 web_* 项目中相同的模板文件共用）
+ * - manifests/<项目>/<快照>.json：快照清单，记录路径 -> 哈希、大小、修改时间
+ * - 拍快照时大小与修改时间都与上一份清单相同的文件直接沿用其哈希，不再读取，只有变化的文件需要计算哈希、写入存储
+ * - 恢复时跳过与清单一致的文件，其余从存储复制（或硬链接）后原子替换；清单中没有的文件被删除
+ * 与文件树一样跳过 target 目录；符号链接不记录
+ */
+public final class ProjectSnapshots {
+
+    /** 存储目录，与各子项目同级 */
+    private static final Path STORE = Path.of(System.getProperty("core.snapshot.dir", ".snapshots")).toAbsolutePath().normalize();
+    private static final Path BLOBS = STORE.resolve("blobs");
+    private static final Path MANIFESTS = STORE.resolve("manifests");
+
+    /**
+     * 恢复时用硬链接代替复制，不占额外空间；
+     * 但在终端中原地修改（如 echo >> 文件）会同时改坏存储中的内容，默认关闭
+     */
+    private static final boolean HARD_LINKS = Boolean.getBoolean("core.snapshot.hardLinks");
+
+    /** 不记录的目录名（构建输出） */
+    private static final String EXCLUDED_DIR = "target";
+
+    private static final DateTimeFormatter ID_FORMAT = DateTimeFormatter.ofPattern("yyyyMMdd-HHmmss-SSS");
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
+    /** 清单中的一个文件 */
+    public record FileEntry(String sha256, long size, long mtimeNanos, boolean executable) {}
+
+    /** 快照清单 */
+    public record Manifest(String project, String id, String label, long createdAt,
+                           List<String> dirs, Map<String, FileEntry> files) {}
+
+    /** 每个项目最近一份清单（用于跳过未变化的文件），与项目锁 */
+    private static final Map<String, Manifest> LATEST = new ConcurrentHashMap<>();
+    private static final Map<String, Object> LOCKS = new ConcurrentHashMap<>();
+    /** 拍快照、恢复持有读锁；清理存储时持有写锁，避免删掉正被引用的内容 */
+    private static final ReentrantReadWriteLock STORE_LOCK = new ReentrantReadWriteLock();
+
+    private ProjectSnapshots() {}
+
+    /** 为项目拍快照 */
+    public static ResponseData snapshot(String project, String label) {
+        if (!ProjectManager.PROJECTS.containsKey(project)) return ResponseData.error("Unknown project: " + project);
+        long start = System.nanoTime();
+        synchronized (lockFor(project)) {
+            STORE_LOCK.readLock().lock();
+            try {
+                Path root = Path.of(ProjectManager.PROJECTS.get(project)).toRealPath();
+                Manifest previous = latest(project);
+                Map<String, FileEntry> previousFiles = previous == null ? Map.of() : previous.files();
+
+                // 遍历只读取文件属性，未变化的文件沿用上一份清单的哈希
+                Map<String, FileEntry> files = new TreeMap<>();
+                List<String> dirs = new ArrayList<>();
+                Map<String, BasicFileAttributes> changed = new HashMap<>();
+                walk(root, (relative, attrs) -> {
+                    if (attrs.isDirectory()) {
+                        dirs.add(relative);
+                        return;
+                    }
+                    FileEntry old = previousFiles.get(relative);
+                    long mtime = attrs.lastModifiedTime().to(TimeUnit.NANOSECONDS);
+                    if (old != null && old.size() == attrs.size() && old.mtimeNanos() == mtime) {
+                        files.put(relative, old);
+                    } else {
+                        changed.put(relative, attrs);
+                    }
+                });
+
+                // 变化的文件并行计算哈希并写入存储
+                AtomicLong newBlobs = new AtomicLong();
+                AtomicLong storedBytes = new AtomicLong();
+                Map<String, FileEntry> hashed = new ConcurrentHashMap<>();
+                changed.entrySet().parallelStream().forEach(e -> {
+                    Path file = root.resolve(e.getKey());
+                    try {
+                        BasicFileAttributes attrs = e.getValue();
+                        String sha256 = store(file, newBlobs, storedBytes);
+                        hashed.put(e.getKey(), new FileEntry(sha256, attrs.size(),
+                                attrs.lastModifiedTime().to(TimeUnit.NANOSECONDS), Files.isExecutable(file)));
+                    } catch (IOException ex) {
+                        // 遍历后被删除的文件不记录
+                        System.err.println("[ProjectSnapshots] Skip " + file + ": " + ex.getMessage());
+                    }
+                });
+                files.putAll(hashed);
+
+                String id = LocalDateTime.now().format(ID_FORMAT);
+                Manifest manifest = new Manifest(project, id, label == null ? "" : label,
+                        System.currentTimeMillis(), dirs, files);
+                Path manifestFile = MANIFESTS.resolve(project).resolve(id + ".json");
+                Files.createDirectories(manifestFile.getParent());
+                Path temp = Files.createTempFile(manifestFile.getParent(), ".manifest", ".tmp");
+                try {
+                    MAPPER.writeValue(temp.toFile(), manifest);
+                    Files.move(temp, manifestFile, StandardCopyOption.ATOMIC_MOVE);
+                } finally {
+                    Files.deleteIfExists(temp);
+                }
+                LATEST.put(project, manifest);
+
+                return ResponseData.success("Snapshot created", Map.of(
+                        "project", project,
+                        "snapshot", id,
+                        "files", String.valueOf(files.size()),
+                        "changed", String.valueOf(changed.size()),
+                        "newBlobs", String.valueOf(newBlobs.get()),
+                        "storedBytes", String.valueOf(storedBytes.get()),
+                        "durationMs", String.valueOf((System.nanoTime() - start) / 1_000_000)
+                ));
+            } catch (Exception e) {
+                return ResponseData.error("Snapshot failed: " + e.getMessage());
+            } finally {
+                STORE_LOCK.readLock().unlock();
+            }
+        }
+    }
+
+    /** 项目的全部快照（新的在前） */
+    public static ResponseData list(String project) {
+        if (!ProjectManager.PROJECTS.containsKey(project)) return ResponseData.error("Unknown project: " + project);
+        List<Map<String, String>> items = new ArrayList<>();
+        try {
+            for (String id : manifestIds(project).descendingSet()) {
+                Manifest manifest = readManifest(project, id);
+                long bytes = manifest.files().values().stream().mapToLong(FileEntry::size).sum();
+                items.add(Map.of(
+                        "snapshot", id,
+                        "label", manifest.label(),
+                        "createdAt", String.valueOf(manifest.createdAt()),
+                        "files", String.valueOf(manifest.files().size()),
+                        "bytes", String.valueOf(bytes)
+                ));
+            }
+        } catch (IOException e) {
+            return ResponseData.error("List snapshots failed: " + e.getMessage());
+        }
+        return ResponseData.success("Snapshots", Map.of("project", project), items);
+    }
+
+    /**
+     * 把项目恢复到快照
+     * @param tree 项目的文件树索引，恢复后同步
+     */
+    public static ResponseData restore(String project, String id, FileTreeIndex tree) {
+        if (!ProjectManager.PROJECTS.containsKey(project)) return ResponseData.error("Unknown project: " + project);
+        long start = System.nanoTime();
+        synchronized (lockFor(project)) {
+            STORE_LOCK.readLock().lock();
+            try {
+                Manifest manifest = readManifest(project, id);
+                Path root = Path.of(ProjectManager.PROJECTS.get(project)).toRealPath();
+
+                // 删除清单中没有的文件与目录（子项先于目录）
+                List<Path> removed = new ArrayList<>();
+                Set<String> dirs = new HashSet<>(manifest.dirs());
+                List<String> extraDirs = new ArrayList<>();
+                walk(root, (relative, attrs) -> {
+                    if (attrs.isDirectory() ? !dirs.contains(relative) : !manifest.files().containsKey(relative)) {
+                        if (attrs.isDirectory()) {
+                            extraDirs.add(relative);
+                        } else {
+                            Files.delete(root.resolve(relative));
+                            removed.add(root.resolve(relative));
+                        }
+                    }
+                });
+                extraDirs.sort((a, b) -> b.compareTo(a));
+                for (String dir : extraDirs) {
+                    try {
+                        Files.delete(root.resolve(dir));
+                        removed.add(root.resolve(dir));
+                    } catch (IOException e) {
+                        // 其中有被跳过的 target 目录
+                    }
+                }
+
+                // 创建目录，替换内容不一致的文件
+                for (String dir : manifest.dirs()) Files.createDirectories(root.resolve(dir));
+                List<Path> restored = new ArrayList<>();
+                for (Map.Entry<String, FileEntry> e : manifest.files().entrySet()) {
+                    Path target = root.resolve(e.getKey());
+                    if (unchanged(target, e.getValue())) continue;
+                    synchronized (ProjectManager.lockFor(target)) {
+                        materialize(e.getValue(), target);
+                    }
+                    restored.add(target);
+                }
+                LATEST.put(project, manifest);
+
+                for (Path path : removed) {
+                    tree.removed(path);
+                    ContentCache.getInstance().invalidate(path);
+                }
+                for (Path path : restored) {
+                    tree.added(path);
+                    ContentCache.getInstance().invalidate(path);
+                }
+                return ResponseData.success("Snapshot restored", Map.of(
+                        "project", project,
+                        "snapshot", id,
+                        "restored", String.valueOf(restored.size()),
+                        "removed", String.valueOf(removed.size()),
+                        "durationMs", String.valueOf((System.nanoTime() - start) / 1_000_000)
+                ));
+            } catch (IllegalArgumentException e) {
+                return new ResponseData(404, e.getMessage());
+            } catch (Exception e) {
+                return ResponseData.error("Restore failed: " + e.getMessage());
+            } finally {
+                STORE_LOCK.readLock().unlock();
+            }
+        }
+    }
+
+    /** 删除快照，并清理不再被任何快照引用的内容 */
+    public static ResponseData delete(String project, String id) {
+        if (!ProjectManager.PROJECTS.containsKey(project)) return ResponseData.error("Unknown project: " + project);
+        STORE_LOCK.writeLock().lock();
+        try {
+            readManifest(project, id);
+            Files.delete(MANIFESTS.resolve(project).resolve(id + ".json"));
+            Manifest latest = LATEST.get(project);
+            if (latest != null && latest.id().equals(id)) LATEST.remove(project);
+
+            // 收集全部清单引用的哈希，删除其余内容
+            Set<String> referenced = new HashSet<>();
+            if (Files.isDirectory(MANIFESTS)) {
+                try (Stream<Path> manifests = Files.walk(MANIFESTS)) {
+                    for (Path file : (Iterable<Path>) manifests.filter(p -> p.toString().endsWith(".json"))::iterator) {
+                        MAPPER.readValue(file.toFile(), Manifest.class).files().values()
+                                .forEach(f -> referenced.add(f.sha256()));
+                    }
+                }
+            }
+            long freed = 0;
+            int blobs = 0;
+            try (Stream<Path> stored = Files.walk(BLOBS)) {
+                for (Path blob : (Iterable<Path>) stored.filter(Files::isRegularFile)::iterator) {
+                    if (referenced.contains(blob.getFileName().toString())) continue;
+                    freed += Files.size(blob);
+                    blobs++;
+                    Files.delete(blob);
+                }
+            }
+            return ResponseData.success("Snapshot deleted", Map.of(
+                    "snapshot", id,
+                    "deletedBlobs", String.valueOf(blobs),
+                    "freedBytes", String.valueOf(freed)
+            ));
+        } catch (IllegalArgumentException e) {
+            return new ResponseData(404, e.getMessage());
+        } catch (Exception e) {
+            return ResponseData.error("Delete snapshot failed: " + e.getMessage());
+        } finally {
+            STORE_LOCK.writeLock().unlock();
+        }
+    }
+
+    // ========== 存储 ==========
+
+    /**
+     * 一次读取同时计算哈希并写入临时文件，内容已存在时丢弃临时文件
+     * @return 内容的 SHA-256
+     */
+    private static String store(Path file, AtomicLong newBlobs, AtomicLong storedBytes) throws IOException {
+        Path tmpDir = BLOBS.resolve("tmp");
+        Files.createDirectories(tmpDir);
+        Path temp = Files.createTempFile(tmpDir, "blob", ".tmp");
+        try {
+            MessageDigest digest = newSha256();
+            long size;
+            try (InputStream in = new DigestInputStream(Files.newInputStream(file), digest);
+                 OutputStream out = Files.newOutputStream(temp)) {
+                size = in.transferTo(out);
+            }
+            String sha256 = HexFormat.of().formatHex(digest.digest());
+            Path blob = blobPath(sha256);
+            if (!Files.exists(blob)) {
+                Files.createDirectories(blob.getParent());
+                try {
+                    Files.setPosixFilePermissions(temp, PosixFilePermissions.fromString("r--r--r--"));
+                } catch (UnsupportedOperationException ignored) {
+                    // 非 POSIX 文件系统
+                }
+                try {
+                    Files.move(temp, blob, StandardCopyOption.ATOMIC_MOVE);
+                    newBlobs.incrementAndGet();
+                    storedBytes.addAndGet(size);
+                } catch (FileAlreadyExistsException e) {
+                    // 另一个线程刚写入了相同内容
+                }
+            }
+            return sha256;
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+
+    /** 从存储中取出内容，原子替换目标文件 */
+    private static void materialize(FileEntry entry, Path target) throws IOException {
+        Path blob = blobPath(entry.sha256());
+        if (!Files.exists(blob)) throw new IOException("Missing blob " + entry.sha256() + " for " + target);
+        Files.createDirectories(target.getParent());
+        Path temp = Files.createTempFile(target.getParent(), "." + target.getFileName(), ".tmp");
+        try {
+            if (HARD_LINKS) {
+                // 硬链接与存储共用 inode，不修改权限与修改时间
+                Files.delete(temp);
+                try {
+                    Files.createLink(temp, blob);
+                    Files.move(temp, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+                    return;
+                } catch (IOException | UnsupportedOperationException e) {
+                    // 跨文件系统等情况，改为复制
+                }
+            }
+            Files.copy(blob, temp, StandardCopyOption.REPLACE_EXISTING);
+            Files.setLastModifiedTime(temp, FileTime.from(entry.mtimeNanos(), TimeUnit.NANOSECONDS));
+            ProjectManager.moveIntoPlace(temp, target);
+            if (entry.executable()) {
+                try {
+                    Files.setPosixFilePermissions(target, PosixFilePermissions.fromString("rwxr-xr-x"));
+                } catch (UnsupportedOperationException ignored) {
+                    // 非 POSIX 文件系统
+                }
+            }
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+
+    private static boolean unchanged(Path file, FileEntry entry) {
+        try {
+            BasicFileAttributes attrs = Files.readAttributes(file, BasicFileAttributes.class);
+            return attrs.isRegularFile() && attrs.size() == entry.size()
+                    && attrs.lastModifiedTime().to(TimeUnit.NANOSECONDS) == entry.mtimeNanos();
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    private static Path blobPath(String sha256) {
+        return BLOBS.resolve(sha256.substring(0, 2)).resolve(sha256);
+    }
+
+    // ========== 清单 ==========
+
+    /** 最近一份清单：内存中没有时读取最新的快照文件 */
+    private static Manifest latest(String project) throws IOException {
+        Manifest manifest = LATEST.get(project);
+        if (manifest != null) return manifest;
+        TreeSet<String> ids = manifestIds(project);
+        return ids.isEmpty() ? null : readManifest(project, ids.last());
+    }
+
+    /** 快照编号按时间格式化，字典序即时间顺序 */
+    private static TreeSet<String> manifestIds(String project) throws IOException {
+        TreeSet<String> ids = new TreeSet<>();
+        Path dir = MANIFESTS.resolve(project);
+        if (!Files.isDirectory(dir)) return ids;
+        try (Stream<Path> files = Files.list(dir)) {
+            files.map(p -> p.getFileName().toString())
+                    .filter(name -> name.endsWith(".json") && !name.startsWith("."))
+                    .forEach(name -> ids.add(name.substring(0, name.length() - ".json".length())));
+        }
+        return ids;
+    }
+
+    private static Manifest readManifest(String project, String id) throws IOException {
+        if (id == null || !id.matches("[0-9-]+")) throw new IllegalArgumentException("Unknown snapshot: " + id);
+        Path file = MANIFESTS.resolve(project).resolve(id + ".json");
+        if (!Files.isRegularFile(file)) throw new IllegalArgumentException("Unknown snapshot: " + id);
+        return MAPPER.readValue(file.toFile(), Manifest.class);
+    }
+
+    // ========== 工具 ==========
+
+    private interface Visitor {
+        void visit(String relative, BasicFileAttributes attrs) throws IOException;
+    }
+
+    /** 遍历项目（不含根目录本身与 target 目录），路径统一使用 / 分隔 */
+    private static void walk(Path root, Visitor visitor) throws IOException {
+        Files.walkFileTree(root, new SimpleFileVisitor<>() {
+            @Override
+            public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) throws IOException {
+                if (dir.equals(root)) return FileVisitResult.CONTINUE;
+                if (dir.getFileName().toString().equals(EXCLUDED_DIR)) return FileVisitResult.SKIP_SUBTREE;
+                visitor.visit(relative(root, dir), attrs);
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException {
+                if (attrs.isRegularFile()) visitor.visit(relative(root, file), attrs);
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult visitFileFailed(Path file, IOException e) {
+                return FileVisitResult.CONTINUE;
+            }
+        });
+    }
+
+    private static String relative(Path root, Path path) {
+        return root.relativize(path).toString().replace(path.getFileSystem().getSeparator(), "/");
+    }
+
+    private static Object lockFor(String project) {
+        return LOCKS.computeIfAbsent(project, k -> new Object());
+    }
+
+    private static MessageDigest newSha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
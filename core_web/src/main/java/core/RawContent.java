@@ -0,0 +1,128 @@
+package core;
+
+import jakarta.servlet.ServletOutputStream;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.concurrent.TimeUnit;
+import org.eclipse.jetty.server.HttpOutput;
+
+/**
+ * RawContent
+ * ----------------------------------------
+ * 原样发送文件内容（不经过 JSON 编码，二进制文件同样可用）
+ * - ETag 由文件大小与修改时间生成，If-None-Match 命中时返回 304，只读取文件属性
+ * - 支持单段 Range 请求（206 / 416），多段 Range 按整个文件返回
+ * - 小文件（见 ContentCache.cacheable）从共享的内容缓存发送，编辑器反复打开同一文件时不再读盘；
+ *   大文件映射到内存后交给 Jetty 直接写出，不经过堆内拷贝
+ */
+final class RawContent {
+
+    private RawContent() {}
+
+    /** 由大小与修改时间（纳秒）生成的强 ETag */
+    static String etag(BasicFileAttributes attrs) {
+        return "\"" + Long.toHexString(attrs.size()) + "-"
+                + Long.toHexString(attrs.lastModifiedTime().to(TimeUnit.NANOSECONDS)) + "\"";
+    }
+
+    static void send(HttpServletRequest req, HttpServletResponse resp, Path file, String contentType) throws IOException {
+        BasicFileAttributes attrs = Files.readAttributes(file, BasicFileAttributes.class);
+        String etag = etag(attrs);
+        resp.setHeader("ETag", etag);
+        resp.setHeader("Cache-Control", "no-cache");
+        resp.setHeader("Accept-Ranges", "bytes");
+        if (etag.equals(req.getHeader("If-None-Match"))) {
+            resp.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+            return;
+        }
+
+        byte[] cached = ContentCache.cacheable(attrs.size()) ? ContentCache.getInstance().readBytes(file, attrs) : null;
+        try (FileChannel channel = cached == null ? FileChannel.open(file, StandardOpenOption.READ) : null) {
+            long size = cached != null ? cached.length : channel.size();
+            long start = 0;
+            long length = size;
+
+            // If-Range 不匹配时忽略 Range，返回整个文件
+            String range = req.getHeader("Range");
+            String ifRange = req.getHeader("If-Range");
+            if (range != null && (ifRange == null || ifRange.equals(etag))) {
+                long[] parsed = parseRange(range, size);
+                if (parsed == null) {
+                    resp.setStatus(HttpServletResponse.SC_REQUESTED_RANGE_NOT_SATISFIABLE);
+                    resp.setHeader("Content-Range", "bytes */" + size);
+                    return;
+                }
+                if (parsed.length == 2) {
+                    start = parsed[0];
+                    length = parsed[1] - parsed[0] + 1;
+                    resp.setStatus(HttpServletResponse.SC_PARTIAL_CONTENT);
+                    resp.setHeader("Content-Range", "bytes " + parsed[0] + "-" + parsed[1] + "/" + size);
+                }
+            }
+
+            if (contentType == null) contentType = "application/octet-stream";
+            // 项目源码统一为 UTF-8
+            if (contentType.startsWith("text/") && !contentType.contains("charset")) contentType += "; charset=UTF-8";
+            resp.setContentType(contentType);
+            // 学生的 HTML 与服务器同源，不允许其中的脚本执行
+            resp.setHeader("Content-Security-Policy", "sandbox");
+            resp.setHeader("X-Content-Type-Options", "nosniff");
+            resp.setContentLengthLong(length);
+            if (length == 0 || "HEAD".equals(req.getMethod())) return;
+
+            ServletOutputStream out = resp.getOutputStream();
+            if (cached != null) {
+                out.write(cached, (int) start, (int) length);
+            } else if (out instanceof HttpOutput httpOutput && length <= Integer.MAX_VALUE) {
+                httpOutput.sendContent(channel.map(FileChannel.MapMode.READ_ONLY, start, length));
+            } else {
+                channel.transferTo(start, length, Channels.newChannel(out));
+            }
+        }
+    }
+
+    /**
+     * 解析单段 Range（bytes=a-b、bytes=a-、bytes=-n）
+     * @return {start, end}；空数组表示不支持或无效的格式（按整个文件返回）；null 表示范围无法满足
+     */
+    static long[] parseRange(String header, long size) {
+        if (!header.startsWith("bytes=") || header.indexOf(',') >= 0) return new long[0];
+        String spec = header.substring("bytes=".length()).trim();
+        int dash = spec.indexOf('-');
+        if (dash < 0) return new long[0];
+        try {
+            String first = spec.substring(0, dash).trim();
+            String last = spec.substring(dash + 1).trim();
+            long start;
+            long end;
+            if (first.isEmpty()) {
+                // 末尾 n 字节
+                long suffix = Long.parseLong(last);
+                if (suffix <= 0) return null;
+                start = Math.max(0, size - suffix);
+                end = size - 1;
+            } else {
+                start = Long.parseLong(first);
+                if (last.isEmpty()) {
+                    end = size - 1;
+                } else {
+                    end = Long.parseLong(last);
+                    // last < first 是无效的 Range，忽略（RFC 9110 14.1.1）
+                    if (end < start) return new long[0];
+                    end = Math.min(end, size - 1);
+                }
+            }
+            if (start >= size || start > end) return null;
+            return new long[] {start, end};
+        } catch (NumberFormatException e) {
+            return new long[0];
+        }
+    }
+}
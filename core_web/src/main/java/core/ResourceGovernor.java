@@ -0,0 +1,256 @@
+package core;
+
+import common.utils.ResponseData;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * ResourceGovernor
+ * ----------------------------------------
+ * 终端进程的资源统计与公平调度
+ * - 定期从 /proc 采样每个 session 全部终端进程树的 CPU 时间与常驻内存（RSS）
+ * - 一个周期内 CPU 用量超过公平份额（活跃 session 平均值 × FAIR_SHARE_PERCENT%）的 session 被降低优先级，
+ *   至少保持 PENALTY_PERIODS 个周期，之后不再超额时恢复
+ *   只调整 shell 的子进程，shell 本身不变，之后的新命令不受影响；
+ *   恢复（降低 nice 值）需要 CAP_SYS_NICE，没有权限时不再重试，降级的进程全部结束后解除
+ * - 单条命令运行超过 COMMAND_TIMEOUT_MS 时结束该命令
+ * 非 Linux 系统没有 /proc，只执行命令超时检查
+ */
+public final class ResourceGovernor {
+
+    /** 采样周期（毫秒） */
+    private static final long PERIOD_MS = TimeUnit.SECONDS.toMillis(Long.getLong("core.governor.periodSeconds", 5));
+
+    /** 单条命令的运行时间上限（毫秒），0 表示不限制 */
+    private static final long COMMAND_TIMEOUT_MS = TimeUnit.SECONDS.toMillis(Long.getLong("core.terminal.commandTimeoutSeconds", 0));
+
+    /** 超过公平份额的百分比阈值 */
+    private static final int FAIR_SHARE_PERCENT = Integer.getInteger("core.governor.fairSharePercent", 150);
+
+    /** 降低优先级后至少保持的周期数，避免降级后用量回落又立即恢复造成抖动 */
+    private static final int PENALTY_PERIODS = Integer.getInteger("core.governor.penaltyPeriods", 6);
+
+    /** 超额 session 的 nice 值 */
+    private static final int PENALTY_NICE = Integer.getInteger("core.governor.penaltyNice", 10);
+
+    /** /proc 中 CPU 时间的单位（Linux 的 USER_HZ 固定为 100）与内存页大小 */
+    private static final long TICKS_PER_SECOND = 100;
+    private static final long PAGE_KB = 4;
+
+    private static final Path PROC = Path.of("/proc");
+
+    private static final ResourceGovernor INSTANCE = new ResourceGovernor();
+
+    public static ResourceGovernor getInstance() {
+        return INSTANCE;
+    }
+
+    /** 单个 session 的用量 */
+    private static final class Usage {
+        private long cpuTicks;                             // 累计 CPU 时间（包括已结束的进程）
+        private long lastDelta;                            // 最近一个周期的 CPU 时间
+        private long rssKb;                                // 最近一次采样的 RSS 合计
+        private int processes;
+        private boolean penalized;
+        private long penalizedUntil;                       // 降级持续到第几个周期
+        private Set<Long> unrestored;                      // 恢复优先级失败（没有权限）时仍降级的进程，全部结束后解除
+        private Map<Long, Long> pidTicks = new HashMap<>(); // 上次采样时各进程的 CPU 时间
+    }
+
+    private final boolean procAvailable = Files.isDirectory(PROC);
+    private final Map<String, Usage> usages = new ConcurrentHashMap<>();
+    private long ticks;
+    private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread t = new Thread(r, "resource-governor");
+        t.setDaemon(true);
+        return t;
+    });
+
+    private ResourceGovernor() {
+        scheduler.scheduleWithFixedDelay(this::tick, PERIOD_MS, PERIOD_MS, TimeUnit.MILLISECONDS);
+    }
+
+    /** 当前 session 的用量 */
+    public ResponseData usage(String sessionId) {
+        Usage usage = usages.get(sessionId);
+        Map<String, String> map = new HashMap<>();
+        map.put("cpuMs", String.valueOf(usage == null ? 0 : usage.cpuTicks * 1000 / TICKS_PER_SECOND));
+        map.put("rssKb", String.valueOf(usage == null ? 0 : usage.rssKb));
+        map.put("processes", String.valueOf(usage == null ? 0 : usage.processes));
+        map.put("penalized", usage != null && usage.penalized ? "1" : "0");
+        map.put("penaltyUnrestored", String.valueOf(usage == null || usage.unrestored == null ? 0 : usage.unrestored.size()));
+        return ResponseData.success("Session usage", map);
+    }
+
+    /** 全部 session 的合计与单 session 最大值，用于评估主机容量 */
+    public Map<String, String> summary() {
+        long cpuMs = 0;
+        long rssKb = 0;
+        long maxCpuMs = 0;
+        long maxRssKb = 0;
+        int penalized = 0;
+        int unrestored = 0;
+        for (Usage usage : usages.values()) {
+            long sessionCpuMs = usage.cpuTicks * 1000 / TICKS_PER_SECOND;
+            cpuMs += sessionCpuMs;
+            rssKb += usage.rssKb;
+            maxCpuMs = Math.max(maxCpuMs, sessionCpuMs);
+            maxRssKb = Math.max(maxRssKb, usage.rssKb);
+            if (usage.penalized) penalized++;
+            if (usage.unrestored != null) unrestored++;
+        }
+        Map<String, String> map = new HashMap<>();
+        map.put("sessions", String.valueOf(usages.size()));
+        map.put("cpuMs", String.valueOf(cpuMs));
+        map.put("rssKb", String.valueOf(rssKb));
+        map.put("maxSessionCpuMs", String.valueOf(maxCpuMs));
+        map.put("maxSessionRssKb", String.valueOf(maxRssKb));
+        map.put("penalized", String.valueOf(penalized));
+        map.put("penaltyUnrestored", String.valueOf(unrestored));
+        return map;
+    }
+
+    private void tick() {
+        ticks++;
+        try {
+            Map<String, List<ProcessHandle>> trees = new HashMap<>();
+            Map<String, List<ProcessHandle>> commands = new HashMap<>();
+            TerminalManager.getInstance().forEach((sessionId, executor) -> {
+                if (executor.isClosed()) return;
+                if (COMMAND_TIMEOUT_MS > 0) executor.killIfOverrun(COMMAND_TIMEOUT_MS);
+                trees.computeIfAbsent(sessionId, k -> new ArrayList<>()).addAll(executor.processTree());
+                commands.computeIfAbsent(sessionId, k -> new ArrayList<>()).addAll(executor.commandProcesses());
+            });
+            usages.keySet().retainAll(trees.keySet());
+            if (procAvailable) {
+                trees.forEach(this::sample);
+                balance(commands);
+            }
+        } catch (RuntimeException e) {
+            System.err.println("[ResourceGovernor] Tick failed: " + e.getMessage());
+        }
+    }
+
+    /** 采样一个 session 的进程：累加自上次采样以来的 CPU 时间 */
+    private void sample(String sessionId, List<ProcessHandle> tree) {
+        Usage usage = usages.computeIfAbsent(sessionId, k -> new Usage());
+        Map<Long, Long> pidTicks = new HashMap<>();
+        long delta = 0;
+        long rssKb = 0;
+        for (ProcessHandle process : tree) {
+            long[] stat = readStat(process.pid());
+            if (stat == null) continue;
+            pidTicks.put(process.pid(), stat[0]);
+            delta += Math.max(0, stat[0] - usage.pidTicks.getOrDefault(process.pid(), 0L));
+            rssKb += stat[1] * PAGE_KB;
+        }
+        usage.pidTicks = pidTicks;
+        usage.lastDelta = delta;
+        usage.cpuTicks += delta;
+        usage.rssKb = rssKb;
+        usage.processes = pidTicks.size();
+    }
+
+    /**
+     * 公平调度：只有两个以上 session 在用 CPU 时才有争用，
+     * 超过份额的 session 的命令进程（shell 的子进程）设为 PENALTY_NICE，期满且不再超额后恢复为 ShellPool.NICE
+     * 超额期间新启动的命令进程继承 shell 的 nice 值，因此每个周期都重新设置
+     * @param commands sessionId -> 命令进程
+     */
+    private void balance(Map<String, List<ProcessHandle>> commands) {
+        long total = 0;
+        int active = 0;
+        for (Usage usage : usages.values()) {
+            if (usage.lastDelta > 0) {
+                total += usage.lastDelta;
+                active++;
+            }
+        }
+        long share = active < 2 ? Long.MAX_VALUE : total / active;
+
+        usages.forEach((sessionId, usage) -> {
+            boolean over = share != Long.MAX_VALUE && usage.lastDelta * 100 > share * FAIR_SHARE_PERCENT;
+            List<ProcessHandle> tree = commands.getOrDefault(sessionId, List.of());
+            if (over) {
+                if (!renice(tree, PENALTY_NICE)) return;
+                if (!usage.penalized) System.out.println("[GOVERNOR] Lowered priority of session " + sessionId);
+                usage.penalized = true;
+                usage.penalizedUntil = ticks + PENALTY_PERIODS;
+                if (usage.unrestored != null) tree.forEach(process -> usage.unrestored.add(process.pid()));
+            } else if (usage.unrestored != null) {
+                // 没有权限恢复：等降级的进程全部结束
+                Set<Long> alive = new HashSet<>();
+                tree.forEach(process -> alive.add(process.pid()));
+                usage.unrestored.retainAll(alive);
+                if (usage.unrestored.isEmpty()) {
+                    usage.unrestored = null;
+                    usage.penalized = false;
+                }
+            } else if (usage.penalized && ticks >= usage.penalizedUntil) {
+                if (renice(tree, ShellPool.NICE)) {
+                    usage.penalized = false;
+                } else {
+                    // 不再每个周期重试；shell 未被降级，之后的新命令不受影响
+                    usage.unrestored = new HashSet<>();
+                    tree.forEach(process -> usage.unrestored.add(process.pid()));
+                    System.err.println("[ResourceGovernor] Cannot restore priority of session " + sessionId
+                            + " (needs CAP_SYS_NICE); the penalty ends when its current commands exit");
+                }
+            }
+        });
+    }
+
+    /**
+     * 读取 /proc/[pid]/stat 中的 CPU 时间（utime + stime）与 RSS 页数
+     * @return null 表示进程已结束
+     */
+    private static long[] readStat(long pid) {
+        try {
+            String stat = Files.readString(PROC.resolve(pid + "/stat"));
+            // 进程名可能含空格，从最后一个 ')' 之后开始按空格切分，第 0 项为第 3 个字段（状态）
+            String[] fields = stat.substring(stat.lastIndexOf(')') + 2).split(" ");
+            long ticks = Long.parseLong(fields[11]) + Long.parseLong(fields[12]);
+            long rssPages = Long.parseLong(fields[21]);
+            return new long[] {ticks, rssPages};
+        } catch (IOException | RuntimeException e) {
+            return null;
+        }
+    }
+
+    /**
+     * 调整进程优先级；降低 nice 值需要权限
+     * @return renice 是否对全部进程成功（进程树为空时视为成功）
+     */
+    private static boolean renice(List<ProcessHandle> tree, int nice) {
+        if (runRenice(tree, nice)) return true;
+        // 采样后结束的进程也会使 renice 失败，只对仍存在的进程重试一次
+        return tree != null && runRenice(tree.stream().filter(ProcessHandle::isAlive).toList(), nice);
+    }
+
+    private static boolean runRenice(List<ProcessHandle> tree, int nice) {
+        if (tree == null || tree.isEmpty()) return true;
+        List<String> command = new ArrayList<>(List.of("renice", String.valueOf(nice), "-p"));
+        tree.forEach(process -> command.add(String.valueOf(process.pid())));
+        try {
+            return new ProcessBuilder(command).redirectErrorStream(true).redirectOutput(ProcessBuilder.Redirect.DISCARD)
+                    .start().waitFor() == 0;
+        } catch (IOException e) {
+            System.err.println("[ResourceGovernor] Renice failed: " + e.getMessage());
+            return false;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+}
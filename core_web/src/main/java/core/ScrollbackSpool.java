@@ -0,0 +1,243 @@
+package core;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import common.utils.ResponseData;
+
+/**
+ * ScrollbackSpool
+ * ----------------------------------------
+ * 终端滚动历史的磁盘日志
+ * - 终端全部输出（stdout / stderr 按到达顺序）追加写入一个日志文件，堆中只保留稀疏行索引
+ * - 读取通过内存映射完成：按字节偏移分页、按行号分页、读取末尾 N 行
+ * - 偏移与行号是整个终端生命周期内的绝对值；日志超过 MAX_BYTES 时换新文件，
+ *   之前的内容计入 droppedBytes / droppedLines，读取时返回 dropped
+ * - 追加由共享的写盘线程完成，管道读取线程只复制数据；磁盘停滞时积压超过 MAX_PENDING_BYTES 的输出
+ *   不写入日志，计入 lostBytes
+ */
+public class ScrollbackSpool {
+
+    /** 日志目录 */
+    private static final Path SPOOL_DIR = Paths.get(System.getProperty("core.terminal.spoolDir",
+            Paths.get(System.getProperty("java.io.tmpdir"), "core_web-scrollback").toString()));
+
+    /** 单个终端日志的最大字节数，超过后换新文件 */
+    private static final long MAX_BYTES = Long.getLong("core.terminal.spoolMaxBytes", 64L * 1024 * 1024);
+
+    /** 单次按字节读取的最大长度 */
+    private static final int MAX_PAGE_BYTES = 256 * 1024;
+
+    /** 单次按行读取的最大行数 */
+    private static final int MAX_PAGE_LINES = 5000;
+
+    /** 每个终端尚未写盘的最大字节数 */
+    private static final int MAX_PENDING_BYTES = Integer.getInteger("core.terminal.spoolPendingBytes", 4 * 1024 * 1024);
+
+    private static final ExecutorService WRITER = Executors.newSingleThreadExecutor(r -> {
+        Thread t = new Thread(r, "scrollback-writer");
+        t.setDaemon(true);
+        return t;
+    });
+
+    private final String name;
+    private Path file;
+    private FileChannel channel;
+    private LineIndex index = new LineIndex();
+    private long droppedBytes = 0;
+    private long droppedLines = 0;
+    private boolean closed = false;
+
+    /** 等待写盘的输出，由 pendingLock 保护 */
+    private final Object pendingLock = new Object();
+    private List<byte[]> pending = new ArrayList<>();
+    private int pendingBytes = 0;
+    private boolean drainScheduled = false;
+    private long lostBytes = 0;
+
+    public ScrollbackSpool(String name) throws IOException {
+        this.name = name.replaceAll("[^A-Za-z0-9_.-]", "_");
+        Files.createDirectories(SPOOL_DIR);
+        openFile();
+    }
+
+    private void openFile() throws IOException {
+        file = Files.createTempFile(SPOOL_DIR, name + "-", ".log");
+        channel = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE);
+    }
+
+    /** 追加输出：复制后交给写盘线程，不做磁盘 IO */
+    public void append(byte[] data, int offset, int length) {
+        synchronized (pendingLock) {
+            if (pendingBytes + length > MAX_PENDING_BYTES) {
+                lostBytes += length;
+                return;
+            }
+            pending.add(Arrays.copyOfRange(data, offset, offset + length));
+            pendingBytes += length;
+            if (drainScheduled) return;
+            drainScheduled = true;
+        }
+        WRITER.execute(this::drain);
+    }
+
+    /** 写盘线程：把积压的输出依次写入日志 */
+    private void drain() {
+        List<byte[]> batch;
+        synchronized (pendingLock) {
+            batch = pending;
+            pending = new ArrayList<>();
+            pendingBytes = 0;
+            drainScheduled = false;
+        }
+        synchronized (this) {
+            for (byte[] bytes : batch) write(bytes, 0, bytes.length);
+        }
+    }
+
+    /** 调用方持有 this */
+    private void write(byte[] data, int offset, int length) {
+        if (closed) return;
+        try {
+            if (index.length() + length > MAX_BYTES) rotate();
+            ByteBuffer buffer = ByteBuffer.wrap(data, offset, length);
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            index.feed(data, offset, length);
+        } catch (IOException e) {
+            System.err.println("[ScrollbackSpool] Write " + file + " failed: " + e.getMessage());
+        }
+    }
+
+    /**
+     * 换新文件：旧文件直接删除（已映射的读取仍可完成），偏移与行号继续累加
+     */
+    private void rotate() throws IOException {
+        droppedBytes += index.length();
+        droppedLines += index.lineCount();
+        channel.close();
+        Files.deleteIfExists(file);
+        index = new LineIndex();
+        openFile();
+    }
+
+    /** 按字节偏移读取 */
+    public ResponseData readBytes(long offset, int length) {
+        length = Math.max(0, Math.min(length, MAX_PAGE_BYTES));
+        FileChannel ch;
+        long base;
+        long size;
+        synchronized (this) {
+            if (closed) return ResponseData.error("Scrollback is closed");
+            ch = channel;
+            base = droppedBytes;
+            size = index.length();
+        }
+        long dropped = Math.max(0, base - offset);
+        long start = Math.max(0, offset - base);
+        long end = Math.min(size, start + length);
+        try {
+            String text = "";
+            if (end > start) {
+                MappedByteBuffer buffer = ch.map(FileChannel.MapMode.READ_ONLY, start, end - start);
+                // 起止位置落在多字节字符中间时向内收缩
+                int from = 0;
+                while (from < buffer.limit() && (buffer.get(from) & 0xC0) == 0x80) from++;
+                byte[] bytes = new byte[buffer.limit() - from];
+                buffer.get(from, bytes);
+                int complete = TerminalExecutor.completeUtf8Length(bytes, 0, bytes.length);
+                text = new String(bytes, 0, complete, StandardCharsets.UTF_8);
+                start += from;
+                end = start + complete;
+            }
+            Map<String, String> map = pageMap(text);
+            map.put("offset", String.valueOf(base + start));
+            map.put("nextOffset", String.valueOf(base + Math.max(start, end)));
+            map.put("dropped", String.valueOf(dropped));
+            return ResponseData.success("Scrollback bytes", map);
+        } catch (IOException e) {
+            return ResponseData.error("Read scrollback failed: " + e.getMessage());
+        }
+    }
+
+    /** 按行读取 [fromLine, fromLine + count) */
+    public ResponseData readLines(long fromLine, int count) {
+        count = Math.max(0, Math.min(count, MAX_PAGE_LINES));
+        FileChannel ch;
+        LineIndex idx;
+        long base;
+        long baseLine;
+        synchronized (this) {
+            if (closed) return ResponseData.error("Scrollback is closed");
+            ch = channel;
+            idx = index;
+            base = droppedBytes;
+            baseLine = droppedLines;
+        }
+        try {
+            long dropped = Math.max(0, baseLine - fromLine);
+            LineIndex.Window window = idx.read(ch, 0, Math.max(0, fromLine - baseLine), count);
+            Map<String, String> map = pageMap(window.text());
+            map.put("line", String.valueOf(baseLine + window.firstLine()));
+            map.put("lines", String.valueOf(window.lineCount()));
+            map.put("truncated", String.valueOf(window.truncated()));
+            map.put("truncatedLines", String.valueOf(window.truncatedLines()));
+            map.put("offset", String.valueOf(base + window.startOffset()));
+            map.put("nextOffset", String.valueOf(base + window.endOffset()));
+            map.put("droppedLines", String.valueOf(dropped));
+            return ResponseData.success("Scrollback lines", map);
+        } catch (IOException e) {
+            return ResponseData.error("Read scrollback failed: " + e.getMessage());
+        }
+    }
+
+    /** 读取末尾 count 行 */
+    public ResponseData tail(int count) {
+        long total;
+        synchronized (this) {
+            total = droppedLines + index.lineCount();
+        }
+        return readLines(Math.max(0, total - count), count);
+    }
+
+    /** 关闭并删除日志文件 */
+    public synchronized void close() {
+        if (closed) return;
+        closed = true;
+        try {
+            channel.close();
+            Files.deleteIfExists(file);
+        } catch (IOException e) {
+            System.err.println("[ScrollbackSpool] Delete " + file + " failed: " + e.getMessage());
+        }
+    }
+
+    /** 公共字段：文本与当前日志总量 */
+    private Map<String, String> pageMap(String text) {
+        Map<String, String> map = new HashMap<>();
+        map.put("text", text);
+        synchronized (this) {
+            map.put("size", String.valueOf(droppedBytes + index.length()));
+            map.put("totalLines", String.valueOf(droppedLines + index.lineCount()));
+        }
+        synchronized (pendingLock) {
+            map.put("lostBytes", String.valueOf(lostBytes));
+        }
+        return map;
+    }
+}
@@ -0,0 +1,381 @@
+package core;
+
+import common.utils.ResponseData;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+
+/**
+ * SearchIndex
+ * ----------------------------------------
+ * 项目源码的三元组（trigram）全文索引，每个项目一份
+ * - 首次查询时并行读取全部文本文件建立索引，之后随 FileTreeIndex 的变化通知增量更新
+ * - 查询先用三元组求交得到候选文件，再在候选文件中逐行确认，返回行号与列号
+ * - 三元组不区分大小写；正则查询从中提取必须出现的字面量片段，无法提取时扫描全部文件
+ */
+public final class SearchIndex {
+
+    /** 超过该大小的文件不索引 */
+    private static final long MAX_FILE_BYTES = Long.getLong("core.search.maxFileBytes", 1024 * 1024);
+
+    /** 单次查询返回的最大命中数 */
+    private static final int MAX_HITS = 1000;
+
+    /** 读取期间文件被修改时的最多读取次数，之后以最后一次读取为准（之后的修改事件会再次索引） */
+    static final int MAX_READ_ATTEMPTS = 3;
+
+    /** 命中行最多返回的字符数 */
+    private static final int MAX_LINE_CHARS = 200;
+
+    private static final Map<String, SearchIndex> INDEXES = new ConcurrentHashMap<>();
+
+    /** 获取项目的索引，首次调用时并行建立 */
+    public static SearchIndex of(String project) throws IOException {
+        SearchIndex index = INDEXES.get(project);
+        if (index != null) return index;
+        synchronized (INDEXES) {
+            index = INDEXES.get(project);
+            if (index == null) {
+                FileTreeIndex tree = FileTreeIndex.of(project);
+                index = new SearchIndex(project, Path.of(ProjectManager.PROJECTS.get(project)).toRealPath(), tree);
+                index.build();
+                tree.addListener(index::changed);
+                INDEXES.put(project, index);
+            }
+            return index;
+        }
+    }
+
+    /**
+     * 查询一个或全部项目
+     * @param project 为 null 时查询全部项目
+     * @param regex   query 是否为正则表达式
+     */
+    public static ResponseData search(String project, String query, boolean regex, boolean caseSensitive, int limit) {
+        if (query == null || query.isEmpty()) return new ResponseData(400, "Missing query");
+        long start = System.nanoTime();
+        Pattern pattern;
+        try {
+            int flags = caseSensitive ? 0 : Pattern.CASE_INSENSITIVE | Pattern.UNICODE_CASE;
+            pattern = regex ? Pattern.compile(query, flags) : Pattern.compile(Pattern.quote(query), flags);
+        } catch (PatternSyntaxException e) {
+            return new ResponseData(400, "Invalid regex: " + e.getDescription());
+        }
+        List<String> literals = regex ? requiredLiterals(query) : List.of(query);
+        limit = Math.max(1, Math.min(limit, MAX_HITS));
+
+        Collection<String> projects = project == null ? ProjectManager.PROJECTS.keySet().stream().sorted().toList() : List.of(project);
+        List<Map<String, String>> hits = new ArrayList<>();
+        int candidates = 0;
+        try {
+            for (String name : projects) {
+                if (!ProjectManager.PROJECTS.containsKey(name)) return new ResponseData(400, "Unknown project: " + name);
+                SearchIndex index = of(name);
+                List<String> files = index.candidates(literals);
+                candidates += files.size();
+                if (!index.scan(files, pattern, hits, limit)) break;
+            }
+        } catch (IOException e) {
+            return ResponseData.error("Search failed: " + e.getMessage());
+        }
+
+        Map<String, String> map = new HashMap<>();
+        map.put("count", String.valueOf(hits.size()));
+        map.put("truncated", String.valueOf(hits.size() >= limit));
+        map.put("candidates", String.valueOf(candidates));
+        map.put("durationMs", String.valueOf((System.nanoTime() - start) / 1_000_000));
+        return ResponseData.success("Search finished", map, hits);
+    }
+
+    /** 一个已索引的文件：内容与其三元组（用于更新时从倒排表移除） */
+    private record Doc(String content, long[] trigrams) {}
+
+    private final String project;
+    private final Path root;
+    private final FileTreeIndex tree;
+    /** 相对路径 -> 文件 */
+    private final Map<String, Doc> docs = new ConcurrentHashMap<>();
+    /** 三元组 -> 包含它的文件 */
+    private final Map<Long, Set<String>> postings = new ConcurrentHashMap<>();
+
+    private SearchIndex(String project, Path root, FileTreeIndex tree) {
+        this.project = project;
+        this.root = root;
+        this.tree = tree;
+    }
+
+    /** 并行读取文件树中的全部文件 */
+    private void build() {
+        tree.snapshot().files().entrySet().parallelStream()
+                .filter(e -> e.getValue().equals("File"))
+                .forEach(e -> index(e.getKey()));
+    }
+
+    /**
+     * FileTreeIndex 的变化通知：文件重新索引，删除的文件或目录从索引中移除
+     * 目录整体出现时（解压、终端中复制或克隆）只通知一次目录本身，索引其下的全部文件
+     */
+    private void changed(Path path) {
+        if (!path.startsWith(root)) return;
+        String relative = root.relativize(path).toString();
+        if (Files.isRegularFile(path)) {
+            index(relative);
+        } else if (Files.isDirectory(path)) {
+            tree.filesUnder(path).parallelStream().forEach(this::index);
+        } else if (!Files.exists(path)) {
+            String prefix = relative + path.getFileSystem().getSeparator();
+            for (String key : new ArrayList<>(docs.keySet())) {
+                if (key.equals(relative) || key.startsWith(prefix)) remove(key);
+            }
+        }
+    }
+
+    /**
+     * 索引（或重新索引）一个文件；二进制与过大的文件只移除
+     * 一次保存会被索引两次（写操作的通知与 WatchService 事件），读取在锁外进行：
+     * 安装前在锁内复查大小与修改时间，读取期间文件已变化时重新读取，旧内容不会覆盖新内容
+     */
+    private void index(String relative) {
+        Path file = root.resolve(relative);
+        for (int attempt = 1; ; attempt++) {
+            FileTreeIndex.Stamp before = FileTreeIndex.Stamp.of(file);
+            String content = null;
+            try {
+                if (Files.size(file) <= MAX_FILE_BYTES) {
+                    byte[] bytes = Files.readAllBytes(file);
+                    if (!isBinary(bytes)) content = new String(bytes, StandardCharsets.UTF_8);
+                }
+            } catch (IOException e) {
+                // 文件已删除或不可读，按删除处理
+            }
+            synchronized (this) {
+                if (!Objects.equals(before, FileTreeIndex.Stamp.of(file)) && attempt < MAX_READ_ATTEMPTS) continue;
+                remove(relative);
+                if (content == null) return;
+                long[] trigrams = trigrams(content);
+                docs.put(relative, new Doc(content, trigrams));
+                for (long t : trigrams) {
+                    postings.computeIfAbsent(t, k -> ConcurrentHashMap.newKeySet()).add(relative);
+                }
+                return;
+            }
+        }
+    }
+
+    private synchronized void remove(String relative) {
+        Doc old = docs.remove(relative);
+        if (old == null) return;
+        for (long t : old.trigrams()) {
+            Set<String> files = postings.get(t);
+            if (files == null) continue;
+            files.remove(relative);
+            if (files.isEmpty()) postings.remove(t, files);
+        }
+    }
+
+    /** 必须同时包含全部字面量的候选文件；字面量都短于 3 个字符时返回全部文件 */
+    private List<String> candidates(List<String> literals) {
+        Set<String> result = null;
+        for (String literal : literals) {
+            for (long t : trigrams(literal)) {
+                Set<String> files = postings.getOrDefault(t, Set.of());
+                if (result == null) {
+                    result = new HashSet<>(files);
+                } else {
+                    result.retainAll(files);
+                }
+                if (result.isEmpty()) return List.of();
+            }
+        }
+        return (result == null ? new ArrayList<>(docs.keySet()) : new ArrayList<>(result)).stream().sorted().toList();
+    }
+
+    /**
+     * 在候选文件中逐行匹配
+     * @return false 表示已达到命中上限
+     */
+    private boolean scan(List<String> files, Pattern pattern, List<Map<String, String>> hits, int limit) {
+        for (String relative : files) {
+            Doc doc = docs.get(relative);
+            if (doc == null) continue;
+            String content = doc.content();
+            int lineNo = 1;
+            int lineStart = 0;
+            while (lineStart <= content.length()) {
+                int lineEnd = content.indexOf('\n', lineStart);
+                if (lineEnd < 0) lineEnd = content.length();
+                String line = content.substring(lineStart, lineEnd);
+                Matcher matcher = pattern.matcher(line);
+                if (matcher.find()) {
+                    Map<String, String> hit = new HashMap<>();
+                    hit.put("project", project);
+                    hit.put("path", relative);
+                    hit.put("line", String.valueOf(lineNo));
+                    hit.put("column", String.valueOf(matcher.start() + 1));
+                    hit.put("text", line.length() > MAX_LINE_CHARS ? line.substring(0, MAX_LINE_CHARS) : line);
+                    hits.add(hit);
+                    if (hits.size() >= limit) return false;
+                }
+                lineStart = lineEnd + 1;
+                lineNo++;
+            }
+        }
+        return true;
+    }
+
+    /** 文本中全部不重复的三元组（小写后，每个字符 16 位拼成 long） */
+    private static long[] trigrams(String text) {
+        String lower = text.toLowerCase(Locale.ROOT);
+        if (lower.length() < 3) return new long[0];
+        Set<Long> set = new HashSet<>();
+        for (int i = 0; i + 3 <= lower.length(); i++) {
+            set.add(((long) lower.charAt(i) << 32) | ((long) lower.charAt(i + 1) << 16) | lower.charAt(i + 2));
+        }
+        long[] result = new long[set.size()];
+        int i = 0;
+        for (long t : set) result[i++] = t;
+        Arrays.sort(result);
+        return result;
+    }
+
+    /**
+     * 从正则中提取必须出现的字面量片段
+     * 含 | 时无法确定必须出现的内容，返回空（扫描全部文件）；
+     * 元字符处断开，后面跟 ? * { 的字符可能不出现，不计入；
+     * 后面跟 ? * { 的分组与环视整段跳过，内联标志（(?i) 等）改变匹配方式，返回空
+     */
+    static List<String> requiredLiterals(String regex) {
+        if (regex.indexOf('|') >= 0) return List.of();
+        List<String> literals = new ArrayList<>();
+        StringBuilder current = new StringBuilder();
+        for (int i = 0; i < regex.length(); i++) {
+            char c = regex.charAt(i);
+            char next = i + 1 < regex.length() ? regex.charAt(i + 1) : 0;
+            boolean optional = next == '?' || next == '*' || next == '{';
+            if (c == '(') {
+                flush(current, literals);
+                int close = closingParen(regex, i);
+                if (close < 0) return List.of();
+                char after = close + 1 < regex.length() ? regex.charAt(close + 1) : 0;
+                boolean lookaround = regex.startsWith("(?=", i) || regex.startsWith("(?!", i)
+                        || regex.startsWith("(?<=", i) || regex.startsWith("(?<!", i);
+                if (lookaround || after == '?' || after == '*' || after == '{') {
+                    // 分组可能不出现：跳到 ')'，其后的量词按元字符处理
+                    i = close;
+                } else if (regex.startsWith("(?:", i)) {
+                    i += 2;
+                } else if (regex.startsWith("(?<", i)) {
+                    i = regex.indexOf('>', i);
+                } else if (next == '?') {
+                    // (?i) (?-s:...) 等内联标志、(?>...) 独占分组
+                    return List.of();
+                }
+            } else if (c == '\\' && i + 1 < regex.length() && !Character.isLetterOrDigit(next)) {
+                // 转义的元字符按字面量处理（\. \( 等）
+                char after = i + 2 < regex.length() ? regex.charAt(i + 2) : 0;
+                if (after == '?' || after == '*' || after == '{') {
+                    flush(current, literals);
+                } else {
+                    current.append(next);
+                }
+                i++;
+            } else if (".[]()^$+*?{}\\".indexOf(c) >= 0 || optional) {
+                // 字符类、分组、\d 等：在此断开；[...]、{...} 与带参数的转义整段跳过
+                flush(current, literals);
+                if (c == '[') i = skipTo(regex, i, ']');
+                if (c == '{') i = skipTo(regex, i, '}');
+                if (c == '\\') i = escapeEnd(regex, i);
+            } else {
+                current.append(c);
+            }
+        }
+        flush(current, literals);
+        return literals;
+    }
+
+    private static void flush(StringBuilder current, List<String> literals) {
+        if (current.length() >= 3) literals.add(current.toString());
+        current.setLength(0);
+    }
+
+    private static int skipTo(String regex, int from, char end) {
+        for (int i = from + 1; i < regex.length(); i++) {
+            if (regex.charAt(i) == '\\') {
+                i++;
+            } else if (regex.charAt(i) == end) {
+                return i;
+            }
+        }
+        return regex.length();
+    }
+
+    /**
+     * from 处以字母或数字开头的转义的最后一个字符
+     * \\uXXXX、\\xXX / \\x{...}、\\0 八进制、\\cX、\\k<name>、\\p{...}、\\N{...}、\\Q...\\E 与反向引用的数字都属于转义本身
+     */
+    private static int escapeEnd(String regex, int from) {
+        int i = from + 1;
+        if (i >= regex.length()) return i;
+        char kind = regex.charAt(i);
+        char next = i + 1 < regex.length() ? regex.charAt(i + 1) : 0;
+        switch (kind) {
+            case 'u' -> i += 4;
+            case 'x' -> i = next == '{' ? skipTo(regex, i + 1, '}') : i + 2;
+            case 'c' -> i += 1;
+            case 'k' -> i = skipTo(regex, i, '>');
+            case 'p', 'P', 'N' -> i = next == '{' ? skipTo(regex, i + 1, '}') : i + 1;
+            case 'Q' -> {
+                int end = regex.indexOf("\\E", i);
+                i = end < 0 ? regex.length() : end + 1;
+            }
+            case '0' -> {
+                for (int n = 0; n < 3 && i + 1 < regex.length() && regex.charAt(i + 1) >= '0' && regex.charAt(i + 1) <= '7'; n++) i++;
+            }
+            default -> {
+                while (Character.isDigit(kind) && i + 1 < regex.length() && Character.isDigit(regex.charAt(i + 1))) i++;
+            }
+        }
+        return Math.min(i, regex.length());
+    }
+
+    /** 与 from 处 '(' 配对的 ')'，跳过转义与字符类；没有时返回 -1 */
+    private static int closingParen(String regex, int from) {
+        int depth = 0;
+        for (int i = from; i < regex.length(); i++) {
+            char c = regex.charAt(i);
+            if (c == '\\') {
+                i++;
+            } else if (c == '[') {
+                i = skipTo(regex, i, ']');
+            } else if (c == '(') {
+                depth++;
+            } else if (c == ')' && --depth == 0) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static boolean isBinary(byte[] bytes) {
+        int n = Math.min(bytes.length, 8192);
+        for (int i = 0; i < n; i++) {
+            if (bytes[i] == 0) return true;
+        }
+        return false;
+    }
+}
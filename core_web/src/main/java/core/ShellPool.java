@@ -0,0 +1,155 @@
+package core;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * ShellPool
+ * ----------------------------------------
+ * 预先启动的空闲终端进程池
+ * - 终端启动时直接取出一个已就绪的 shell，不在请求线程里等待进程创建
+ * - 取出后由后台线程补充，池中空闲超过 MAX_IDLE_MS 的 shell 会被销毁并替换
+ * - 池为空时（例如大量用户同时进入）回退为同步创建
+ * - Linux / Mac 下 shell 启动时设置资源限制（ulimit）与 nice 值，子进程继承
+ */
+public final class ShellPool {
+
+    /** 池中保持的空闲 shell 数量，0 表示不预热 */
+    private static final int POOL_SIZE = Integer.getInteger("core.shell.poolSize", 4);
+
+    /** 空闲 shell 的最长存活时间（毫秒） */
+    private static final long MAX_IDLE_MS = TimeUnit.SECONDS.toMillis(Long.getLong("core.shell.maxIdleSeconds", 600));
+
+    /** 每个进程的 CPU 时间上限（秒），0 表示不限制 */
+    private static final int CPU_SECONDS = Integer.getInteger("core.shell.cpuSeconds", 0);
+
+    /** 每个进程的虚拟内存上限（MB），0 表示不限制；JVM 启动时会预留大量虚拟内存，运行 java 需设得足够大 */
+    private static final int MEMORY_MB = Integer.getInteger("core.shell.memoryMb", 0);
+
+    /** 每个进程可创建的文件大小上限（MB），0 表示不限制 */
+    private static final int FILE_MB = Integer.getInteger("core.shell.fileMb", 0);
+
+    /** shell 的 nice 值（越大优先级越低） */
+    public static final int NICE = Integer.getInteger("core.shell.nice", 0);
+
+    private static final ShellPool INSTANCE = new ShellPool();
+
+    public static ShellPool getInstance() {
+        return INSTANCE;
+    }
+
+    private record IdleShell(Process process, long spawnedAt) {}
+
+    /** 终端的根目录（当前工作目录） */
+    private final File rootDir = new File("").getAbsoluteFile();
+    private final LinkedBlockingDeque<IdleShell> idle = new LinkedBlockingDeque<>();
+    private final AtomicBoolean refillScheduled = new AtomicBoolean(false);
+    private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread t = new Thread(r, "shell-pool");
+        t.setDaemon(true);
+        return t;
+    });
+
+    private ShellPool() {
+        if (POOL_SIZE > 0) {
+            scheduleRefill();
+            long checkMs = Math.max(1000, MAX_IDLE_MS / 2);
+            scheduler.scheduleWithFixedDelay(this::expireIdle, checkMs, checkMs, TimeUnit.MILLISECONDS);
+        }
+        Runtime.getRuntime().addShutdownHook(new Thread(this::destroyIdle, "shell-pool-shutdown"));
+    }
+
+    /** 取出一个 shell，池为空时同步创建 */
+    public Process acquire() throws IOException {
+        IdleShell shell;
+        while ((shell = idle.pollFirst()) != null) {
+            if (shell.process().isAlive()) {
+                scheduleRefill();
+                return shell.process();
+            }
+        }
+        scheduleRefill();
+        return spawn();
+    }
+
+    /** 终端根目录 */
+    public File getRootDir() {
+        return rootDir;
+    }
+
+    public int getIdleCount() {
+        return idle.size();
+    }
+
+    public int getPoolSize() {
+        return POOL_SIZE;
+    }
+
+    /** 根据操作系统创建终端进程 */
+    private Process spawn() throws IOException {
+        String os = System.getProperty("os.name").toLowerCase();
+        ProcessBuilder pb;
+
+        if (os.contains("win")) {
+            // Windows 使用 cmd /K 保持终端打开，或 powershell
+            pb = new ProcessBuilder("cmd.exe", "/K");
+        } else {
+            // Linux / Mac 使用 bash，有资源限制时先设置 ulimit 再 exec 真正的终端
+            String limits = limitScript();
+            pb = limits.isEmpty() ? new ProcessBuilder("bash") : new ProcessBuilder("bash", "-c", limits + "exec bash");
+        }
+
+        pb.directory(rootDir);
+        return pb.start();
+    }
+
+    /** 资源限制命令；ulimit 同时设置软、硬限制，学生无法在终端内调高 */
+    private static String limitScript() {
+        StringBuilder sb = new StringBuilder();
+        if (CPU_SECONDS > 0) sb.append("ulimit -t ").append(CPU_SECONDS).append("; ");
+        if (MEMORY_MB > 0) sb.append("ulimit -v ").append(MEMORY_MB * 1024L).append("; ");
+        if (FILE_MB > 0) sb.append("ulimit -f ").append(FILE_MB * 1024L).append("; ");
+        if (NICE != 0) sb.append("renice ").append(NICE).append(" -p $$ > /dev/null; ");
+        return sb.toString();
+    }
+
+    private void scheduleRefill() {
+        if (POOL_SIZE > 0 && refillScheduled.compareAndSet(false, true)) {
+            scheduler.execute(this::refill);
+        }
+    }
+
+    /** 补充到 POOL_SIZE 个空闲 shell */
+    private void refill() {
+        refillScheduled.set(false);
+        try {
+            while (idle.size() < POOL_SIZE) {
+                idle.offerLast(new IdleShell(spawn(), System.currentTimeMillis()));
+            }
+        } catch (IOException e) {
+            System.err.println("[ShellPool] Spawn shell failed: " + e.getMessage());
+        }
+    }
+
+    /** 销毁空闲过久的 shell（最旧的在队首），再补充 */
+    private void expireIdle() {
+        long deadline = System.currentTimeMillis() - MAX_IDLE_MS;
+        IdleShell shell;
+        while ((shell = idle.peekFirst()) != null && shell.spawnedAt() < deadline) {
+            if (idle.remove(shell)) shell.process().destroy();
+        }
+        refill();
+    }
+
+    private void destroyIdle() {
+        IdleShell shell;
+        while ((shell = idle.pollFirst()) != null) {
+            shell.process().destroy();
+        }
+    }
+}
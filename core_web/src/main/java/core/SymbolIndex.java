@@ -0,0 +1,380 @@
+package core;
+
+import com.sun.source.tree.ClassTree;
+import com.sun.source.tree.CompilationUnitTree;
+import com.sun.source.tree.IdentifierTree;
+import com.sun.source.tree.LineMap;
+import com.sun.source.tree.MemberReferenceTree;
+import com.sun.source.tree.MemberSelectTree;
+import com.sun.source.tree.MethodTree;
+import com.sun.source.tree.Tree;
+import com.sun.source.tree.VariableTree;
+import com.sun.source.util.JavacTask;
+import com.sun.source.util.SourcePositions;
+import com.sun.source.util.TreePathScanner;
+import com.sun.source.util.Trees;
+import common.utils.ResponseData;
+import java.io.IOException;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import javax.lang.model.element.Name;
+import javax.tools.JavaCompiler;
+import javax.tools.JavaFileObject;
+import javax.tools.SimpleJavaFileObject;
+import javax.tools.ToolProvider;
+
+/**
+ * SymbolIndex
+ * ----------------------------------------
+ * 项目 Java 源码的符号索引（包、类、方法、字段及其位置），每个项目一份
+ * - 首次查询时并行解析 src/main/java 下的全部源文件（只做语法解析，不编译）
+ * - 之后随 FileTreeIndex 的变化通知（writeFile / createFile / deletePath 及外部修改）只重新解析变化的文件
+ * - 定义查询与引用查询都在内存中按名称查表
+ * 没有类型信息，引用按标识符名称匹配（同名的不同成员会一起列出）
+ */
+public final class SymbolIndex {
+
+    /** 单次查询返回的最大条数 */
+    private static final int MAX_RESULTS = 1000;
+
+    /** 源码目录 */
+    private static final String SOURCE_ROOT = "src/main/java/";
+
+    private static final JavaCompiler JAVAC = ToolProvider.getSystemJavaCompiler();
+
+    private static final Map<String, SymbolIndex> INDEXES = new ConcurrentHashMap<>();
+
+    /** 获取项目的索引，首次调用时并行建立 */
+    public static SymbolIndex of(String project) throws IOException {
+        SymbolIndex index = INDEXES.get(project);
+        if (index != null) return index;
+        synchronized (INDEXES) {
+            index = INDEXES.get(project);
+            if (index == null) {
+                FileTreeIndex tree = FileTreeIndex.of(project);
+                index = new SymbolIndex(project, Path.of(ProjectManager.PROJECTS.get(project)).toRealPath(), tree);
+                index.build();
+                tree.addListener(index::changed);
+                INDEXES.put(project, index);
+            }
+            return index;
+        }
+    }
+
+    /**
+     * 查找定义
+     * @param project 为 null 时查询全部项目
+     * @param name    简单名（如 GameServlet、doGet），或以其结尾的限定名（如 web.GameServlet.doGet）
+     * @param kind    可选：package / class / method / field
+     */
+    public static ResponseData definitions(String project, String name, String kind) {
+        if (name == null || name.isEmpty()) return new ResponseData(400, "Missing name");
+        String simple = name.substring(name.lastIndexOf('.') + 1);
+        return query(project, "Definitions", index -> index.definitions.getOrDefault(simple, Set.of()).stream()
+                .filter(s -> kind == null || kind.isEmpty() || s.kind().equals(kind))
+                .filter(s -> s.qualifiedName().equals(name) || s.qualifiedName().endsWith("." + name) || s.name().equals(name))
+                .map(s -> s.toItem(index.project))
+                .toList());
+    }
+
+    /** 查找引用：名称为 name 的全部标识符出现位置 */
+    public static ResponseData usages(String project, String name) {
+        if (name == null || name.isEmpty()) return new ResponseData(400, "Missing name");
+        String simple = name.substring(name.lastIndexOf('.') + 1);
+        return query(project, "Usages", index -> index.references.getOrDefault(simple, Set.of()).stream()
+                .map(s -> s.toItem(index.project))
+                .toList());
+    }
+
+    private interface Lookup {
+        List<Map<String, String>> find(SymbolIndex index);
+    }
+
+    private static ResponseData query(String project, String message, Lookup lookup) {
+        long start = System.nanoTime();
+        Collection<String> projects = project == null ? ProjectManager.PROJECTS.keySet().stream().sorted().toList() : List.of(project);
+        List<Map<String, String>> items = new ArrayList<>();
+        try {
+            for (String name : projects) {
+                if (!ProjectManager.PROJECTS.containsKey(name)) return new ResponseData(400, "Unknown project: " + name);
+                items.addAll(lookup.find(of(name)));
+            }
+        } catch (IOException e) {
+            return ResponseData.error(message + " failed: " + e.getMessage());
+        }
+        items.sort(Comparator.comparing((Map<String, String> m) -> m.get("project"))
+                .thenComparing(m -> m.get("path"))
+                .thenComparingInt(m -> Integer.parseInt(m.get("line"))));
+        boolean truncated = items.size() > MAX_RESULTS;
+        if (truncated) items = new ArrayList<>(items.subList(0, MAX_RESULTS));
+        Map<String, String> map = new HashMap<>();
+        map.put("count", String.valueOf(items.size()));
+        map.put("truncated", String.valueOf(truncated));
+        map.put("durationMs", String.valueOf((System.nanoTime() - start) / 1_000_000));
+        return ResponseData.success(message, map, items);
+    }
+
+    /**
+     * 一个符号或引用的位置
+     * @param kind 定义为 package / class / method / field，引用为 ref
+     */
+    private record Symbol(String kind, String name, String qualifiedName, String path, long line, long column) {
+        Map<String, String> toItem(String project) {
+            Map<String, String> item = new HashMap<>();
+            item.put("project", project);
+            item.put("kind", kind);
+            item.put("name", name);
+            item.put("qualifiedName", qualifiedName);
+            item.put("path", path);
+            item.put("line", String.valueOf(line));
+            item.put("column", String.valueOf(column));
+            return item;
+        }
+    }
+
+    /** 一个文件解析出的定义与引用（用于更新时从表中移除） */
+    private record Parsed(List<Symbol> definitions, List<Symbol> references) {}
+
+    private final String project;
+    private final Path root;
+    private final FileTreeIndex tree;
+    /** 相对路径 -> 解析结果 */
+    private final Map<String, Parsed> files = new ConcurrentHashMap<>();
+    /** 简单名 -> 定义 / 引用 */
+    private final Map<String, Set<Symbol>> definitions = new ConcurrentHashMap<>();
+    private final Map<String, Set<Symbol>> references = new ConcurrentHashMap<>();
+
+    private SymbolIndex(String project, Path root, FileTreeIndex tree) {
+        this.project = project;
+        this.root = root;
+        this.tree = tree;
+    }
+
+    /** 并行解析文件树中的全部源文件 */
+    private void build() {
+        tree.snapshot().files().entrySet().parallelStream()
+                .filter(e -> e.getValue().equals("File") && isSource(e.getKey()))
+                .forEach(e -> index(e.getKey()));
+    }
+
+    /**
+     * FileTreeIndex 的变化通知：源文件重新解析，删除的文件或目录从索引中移除
+     * 目录整体出现时（解压、终端中复制或克隆）只通知一次目录本身，解析其下的全部源文件
+     */
+    private void changed(Path path) {
+        if (!path.startsWith(root)) return;
+        String relative = root.relativize(path).toString();
+        if (Files.isRegularFile(path)) {
+            if (isSource(relative)) index(relative);
+        } else if (Files.isDirectory(path)) {
+            tree.filesUnder(path).parallelStream().filter(SymbolIndex::isSource).forEach(this::index);
+        } else if (!Files.exists(path)) {
+            String prefix = relative + path.getFileSystem().getSeparator();
+            for (String key : new ArrayList<>(files.keySet())) {
+                if (key.equals(relative) || key.startsWith(prefix)) remove(key);
+            }
+        }
+    }
+
+    private static boolean isSource(String relative) {
+        String normalized = relative.replace('\\', '/');
+        return normalized.endsWith(".java") && (normalized.startsWith(SOURCE_ROOT) || normalized.contains("/" + SOURCE_ROOT));
+    }
+
+    /**
+     * 解析（或重新解析）一个文件；无法读取的文件按删除处理
+     * 与 SearchIndex 相同，安装前复查大小与修改时间，读取期间文件已变化时重新解析
+     */
+    private void index(String relative) {
+        Path file = root.resolve(relative);
+        for (int attempt = 1; ; attempt++) {
+            FileTreeIndex.Stamp before = FileTreeIndex.Stamp.of(file);
+            Parsed parsed;
+            try {
+                parsed = parse(relative, Files.readString(file, StandardCharsets.UTF_8));
+            } catch (IOException e) {
+                parsed = null;
+            }
+            synchronized (this) {
+                if (!Objects.equals(before, FileTreeIndex.Stamp.of(file)) && attempt < SearchIndex.MAX_READ_ATTEMPTS) continue;
+                remove(relative);
+                if (parsed == null) return;
+                files.put(relative, parsed);
+                parsed.definitions().forEach(s -> definitions.computeIfAbsent(s.name(), k -> ConcurrentHashMap.newKeySet()).add(s));
+                parsed.references().forEach(s -> references.computeIfAbsent(s.name(), k -> ConcurrentHashMap.newKeySet()).add(s));
+                return;
+            }
+        }
+    }
+
+    private synchronized void remove(String relative) {
+        Parsed old = files.remove(relative);
+        if (old == null) return;
+        removeAll(definitions, old.definitions());
+        removeAll(references, old.references());
+    }
+
+    private static void removeAll(Map<String, Set<Symbol>> table, List<Symbol> symbols) {
+        for (Symbol s : symbols) {
+            Set<Symbol> set = table.get(s.name());
+            if (set == null) continue;
+            set.remove(s);
+            if (set.isEmpty()) table.remove(s.name(), set);
+        }
+    }
+
+    // ========== 解析 ==========
+
+    /** 只做语法解析（有语法错误的文件仍能得到大部分结构） */
+    private static Parsed parse(String relative, String content) throws IOException {
+        JavaFileObject source = new SimpleJavaFileObject(URI.create("string:///" + relative.replace('\\', '/')), JavaFileObject.Kind.SOURCE) {
+            @Override
+            public CharSequence getCharContent(boolean ignoreEncodingErrors) {
+                return content;
+            }
+        };
+        JavacTask task = (JavacTask) JAVAC.getTask(null, null, diagnostic -> {}, List.of("-proc:none"), null, List.of(source));
+        SourcePositions positions = Trees.instance(task).getSourcePositions();
+        List<Symbol> defs = new ArrayList<>();
+        List<Symbol> refs = new ArrayList<>();
+        for (CompilationUnitTree unit : task.parse()) {
+            new Collector(unit, positions, content, relative, defs, refs).scan(unit, null);
+        }
+        return new Parsed(defs, refs);
+    }
+
+    /** 遍历语法树，记录定义与标识符引用 */
+    private static final class Collector extends TreePathScanner<Void, Void> {
+        private final CompilationUnitTree unit;
+        private final SourcePositions positions;
+        private final LineMap lines;
+        private final String content;
+        private final String path;
+        private final List<Symbol> defs;
+        private final List<Symbol> refs;
+        /** 外层类的限定名 */
+        private final Deque<String> scopes = new ArrayDeque<>();
+
+        private Collector(CompilationUnitTree unit, SourcePositions positions, String content, String path,
+                          List<Symbol> defs, List<Symbol> refs) {
+            this.unit = unit;
+            this.positions = positions;
+            this.lines = unit.getLineMap();
+            this.content = content;
+            this.path = path;
+            this.defs = defs;
+            this.refs = refs;
+        }
+
+        @Override
+        public Void visitCompilationUnit(CompilationUnitTree tree, Void unused) {
+            String pkg = tree.getPackageName() == null ? "" : tree.getPackageName().toString();
+            if (!pkg.isEmpty()) {
+                long pos = positions.getStartPosition(tree, tree.getPackageName());
+                defs.add(symbol("package", simpleName(pkg), pkg, pos));
+                // 包名中的标识符不计入引用
+                scopes.push(pkg);
+                scan(tree.getImports(), null);
+                scan(tree.getTypeDecls(), null);
+                scopes.pop();
+                return null;
+            }
+            scopes.push("");
+            super.visitCompilationUnit(tree, null);
+            scopes.pop();
+            return null;
+        }
+
+        @Override
+        public Void visitClass(ClassTree tree, Void unused) {
+            String name = tree.getSimpleName().toString();
+            if (name.isEmpty()) return super.visitClass(tree, null); // 匿名类
+            String qualified = qualify(name);
+            defs.add(symbol("class", name, qualified, namePosition(tree.getModifiers(), name)));
+            scopes.push(qualified);
+            super.visitClass(tree, null);
+            scopes.pop();
+            return null;
+        }
+
+        @Override
+        public Void visitMethod(MethodTree tree, Void unused) {
+            boolean constructor = tree.getName().contentEquals("<init>");
+            String name = constructor ? simpleName(scopes.peek()) : tree.getName().toString();
+            Tree after = constructor || tree.getReturnType() == null ? tree.getModifiers() : tree.getReturnType();
+            defs.add(symbol("method", name, qualify(name), namePosition(after, name)));
+            return super.visitMethod(tree, null);
+        }
+
+        @Override
+        public Void visitVariable(VariableTree tree, Void unused) {
+            // 只记录字段（直接位于类中），局部变量与参数不作为符号
+            if (getCurrentPath().getParentPath().getLeaf() instanceof ClassTree) {
+                String name = tree.getName().toString();
+                defs.add(symbol("field", name, qualify(name), namePosition(tree.getType(), name)));
+            }
+            return super.visitVariable(tree, null);
+        }
+
+        @Override
+        public Void visitIdentifier(IdentifierTree tree, Void unused) {
+            reference(tree.getName(), positions.getStartPosition(unit, tree));
+            return null;
+        }
+
+        @Override
+        public Void visitMemberSelect(MemberSelectTree tree, Void unused) {
+            // 成员名位于表达式末尾
+            long end = positions.getEndPosition(unit, tree);
+            reference(tree.getIdentifier(), end < 0 ? -1 : end - tree.getIdentifier().length());
+            return super.visitMemberSelect(tree, null);
+        }
+
+        @Override
+        public Void visitMemberReference(MemberReferenceTree tree, Void unused) {
+            long end = positions.getEndPosition(unit, tree);
+            reference(tree.getName(), end < 0 ? -1 : end - tree.getName().length());
+            return super.visitMemberReference(tree, null);
+        }
+
+        private void reference(Name name, long pos) {
+            String text = name.toString();
+            if (pos < 0 || text.equals("<init>") || text.equals("*")) return;
+            refs.add(symbol("ref", text, text, pos));
+        }
+
+        /** 名称的位置：从 from 节点结束处向后查找名称（修饰符、返回类型之后） */
+        private long namePosition(Tree from, String name) {
+            long start = from == null ? -1 : positions.getEndPosition(unit, from);
+            if (start < 0) start = positions.getStartPosition(unit, getCurrentPath().getLeaf());
+            int found = start < 0 ? -1 : content.indexOf(name, (int) start);
+            return found >= 0 ? found : Math.max(0, start);
+        }
+
+        private String qualify(String name) {
+            String outer = scopes.peek();
+            return outer == null || outer.isEmpty() ? name : outer + "." + name;
+        }
+
+        private static String simpleName(String qualified) {
+            return qualified == null ? "" : qualified.substring(qualified.lastIndexOf('.') + 1);
+        }
+
+        private Symbol symbol(String kind, String name, String qualified, long pos) {
+            return new Symbol(kind, name, qualified, path, lines.getLineNumber(pos), lines.getColumnNumber(pos));
+        }
+    }
+}
@@ -1,157 +1,585 @@
 package core;
 
 import java.io.*;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
-import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
 
 import common.utils.ResponseData;
 
 /**
  * TerminalExecutor
  * 所有命令都在独立终端中执行，startCommand + pollOutput 与终端通信
- * pollOutput 增加空输出计数，连续空输出达到上限后自动将 running 置为 false
+ * 每条命令后终端打印结束标记（见 CommandSentinel），据此精确判定命令结束、退出码与耗时
+ * 命令进入有界 FIFO 队列并立即流水线写入终端，每条命令有独立编号与输出范围；
+ * 排队的命令占用终端的 stdin，因此命令本身的 stdin 为 /dev/null（见 CommandSentinel.wrap）
+ * 输出写入按字节预算的环形缓冲区（out / err 各一个），客户端可凭 seq 游标续读
+ * 同时追加到磁盘滚动历史（ScrollbackSpool），可分页回看完整输出
  */
 public class TerminalExecutor {
 
-    private static final int EMPTY_POLL_LIMIT = 10; // 连续空输出次数上限
+    /** 每个终端的输出缓冲字节预算（stdout 与 stderr 平分） */
+    private static final int OUTPUT_BUFFER_BYTES = Integer.getInteger("core.terminal.bufferBytes", 512 * 1024);
+
+    /** 每个终端未完成命令（运行中 + 排队）的上限 */
+    private static final int QUEUE_DEPTH = Integer.getInteger("core.terminal.queueDepth", 16);
+
+    /** 保留可查询状态的已完成命令数 */
+    private static final int FINISHED_HISTORY = 100;
 
     private final String rootPath;
     private String currentPath;
-    private final ConcurrentLinkedQueue<Map<String, String>> outputQueue = new ConcurrentLinkedQueue<>();
-    private volatile boolean running = false;
-    private int emptyPollCount = 0;
+    private final OutputRingBuffer outBuffer = new OutputRingBuffer(OUTPUT_BUFFER_BYTES / 2);
+    private final OutputRingBuffer errBuffer = new OutputRingBuffer(OUTPUT_BUFFER_BYTES / 2);
+    private final ScrollbackSpool scrollback;
+    /** 不带游标的 pollOutput 使用的默认游标 */
+    private long outCursor = 0;
+    private long errCursor = 0;
+    private volatile long lastOutputAt = System.currentTimeMillis();
+    /** 最近一次客户端操作（执行命令 / 读取输出 / WebSocket 连接与消息）的时间，供空闲回收判断 */
+    private volatile long lastAccessAt = System.currentTimeMillis();
+    private final AtomicBoolean closed = new AtomicBoolean();
+
+    /**
+     * 命令状态，由 stateLock 保护
+     * - inFlight：已写入终端、尚未结束的命令，队首为正在运行的命令
+     * - finished：最近完成的命令（按编号查询状态）
+     */
+    private final Object stateLock = new Object();
+    private long nextCommandId = 1;
+    private final ArrayDeque<Command> inFlight = new ArrayDeque<>();
+    private final LinkedHashMap<Long, Command> finished = new LinkedHashMap<>() {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Long, Command> eldest) {
+            return size() > FINISHED_HISTORY;
+        }
+    };
+    private Command lastFinished;
+
+    /** 一条已发送到终端的命令 */
+    private static final class Command {
+        private final long id;
+        private final String text;
+        private long startedAt;      // 开始运行的时间（nanoTime），排队中为 0
+        private long outStart = -1;  // 输出在 out / err 缓冲区中的范围 [start, end)
+        private long outEnd = -1;
+        private long errStart = -1;
+        private long errEnd = -1;
+        private boolean outDone;
+        private boolean errDone;
+        private boolean killed;      // 已因超时被结束
+        private int exitCode;
+        private long durationMs;
+
+        private Command(long id, String text) {
+            this.id = id;
+            this.text = text;
+        }
+    }
+
+    /**
+     * 推送模式的订阅者，收到事件类型后自行读取：
+     * out / err 有新输出，status 命令状态变化，closed 终端已关闭
+     */
+    private final CopyOnWriteArrayList<Consumer<String>> listeners = new CopyOnWriteArrayList<>();
 
     private Process terminalProcess;
     private BufferedWriter terminalWriter;
-    private Thread stdoutThread;
-    private Thread stderrThread;
+    private final CommandSentinel sentinel = new CommandSentinel(System.getProperty("os.name").toLowerCase().contains("win"));
+    private PipeReaderService.Pipe stdoutPipe;
+    private PipeReaderService.Pipe stderrPipe;
 
     public TerminalExecutor() throws IOException {
-        this.rootPath = new File("").getAbsolutePath();
+        ShellPool pool = ShellPool.getInstance();
+        this.rootPath = pool.getRootDir().getAbsolutePath();
         this.currentPath = rootPath;
+        this.scrollback = new ScrollbackSpool("terminal");
 
-        // 根据操作系统选择终端命令
-        String os = System.getProperty("os.name").toLowerCase();
-        ProcessBuilder pb;
-
-        if (os.contains("win")) {
-            // Windows 使用 cmd /K 保持终端打开，或 powershell
-            pb = new ProcessBuilder("cmd.exe", "/K");
-        } else {
-            // Linux / Mac 使用 bash
-            pb = new ProcessBuilder("bash");
-        }
-
-        pb.directory(new File(rootPath));
-        terminalProcess = pb.start();
+        // 从预热池取出已启动的终端进程
+        terminalProcess = pool.acquire();
 
         // 与终端通信的 stdin/stdout
         terminalWriter = new BufferedWriter(new OutputStreamWriter(terminalProcess.getOutputStream()));
 
-        // 读取终端 stdout 和 stderr
-        stdoutThread = new Thread(() -> readStreamToQueue(terminalProcess.getInputStream(), "out"));
-        stderrThread = new Thread(() -> readStreamToQueue(terminalProcess.getErrorStream(), "err"));
-        stdoutThread.start();
-        stderrThread.start();
+        // 读取终端 stdout 和 stderr（由共享的管道读取服务排空）
+        PipeReaderService readers = PipeReaderService.getInstance();
+        try {
+            stdoutPipe = readers.register(terminalProcess.getInputStream(), terminalProcess, new StreamSink("out"));
+            stderrPipe = readers.register(terminalProcess.getErrorStream(), terminalProcess, new StreamSink("err"));
+        } catch (IOException e) {
+            readers.unregister(stdoutPipe);
+            terminalProcess.destroy();
+            scrollback.close();
+            throw e;
+        }
     }
 
     /** 在终端中执行命令 */
     public ResponseData executeCommand(String command) {
-        if (running) return ResponseData.error("Command is running");
-        running = true;
-        emptyPollCount = 0; // 重置空轮询计数
+        return executeCommands(List.of(command));
+    }
 
-        try {
-            if (command.startsWith("cd ")) {
-                String target = command.trim().substring(3).trim();
-                String resolvedPath = resolvePath(currentPath, target);
-
-                // 检查是否在 rootPath 内
-                if (!isInsideRoot(rootPath, resolvedPath)) {
-                    outputQueue.offer(Map.of("type", "err", "text", "Access denied: " + resolvedPath));
-                    running = false;
-                    return ResponseData.success("Outside root path", Map.of("running", "0", "path", getSafeRelativePath()));
+    /**
+     * 依次提交多条命令：全部进入队列并立即写入终端，由终端按顺序执行
+     * 返回每条命令的编号（ids，逗号分隔）；队列剩余容量不足时整批拒绝
+     */
+    public ResponseData executeCommands(List<String> commands) {
+        lastAccessAt = System.currentTimeMillis();
+        List<String> errors = new ArrayList<>();
+        List<String> ids = new ArrayList<>();
+        ResponseData result;
+
+        synchronized (stateLock) {
+            if (inFlight.size() + commands.size() > QUEUE_DEPTH) {
+                return ResponseData.error("Command queue is full (max " + QUEUE_DEPTH + ")");
+            }
+            result = null;
+            try {
+                for (String command : commands) {
+                    String shellCommand = toShellCommand(command, errors);
+                    if (shellCommand == null) continue;
+
+                    // 命令与结束标记一起写入终端
+                    Command cmd = new Command(nextCommandId++, command);
+                    terminalWriter.write(sentinel.wrap(cmd.id, shellCommand));
+                    if (inFlight.isEmpty()) start(cmd);
+                    inFlight.addLast(cmd);
+                    ids.add(String.valueOf(cmd.id));
                 }
+                terminalWriter.flush();
+            } catch (IOException e) {
+                result = ResponseData.error("Failed to send command: " + e.getMessage());
+            }
+        }
 
-                File dir = new File(resolvedPath);
-                if (!dir.isDirectory()) {
-                    outputQueue.offer(Map.of("type", "err", "text", "No such directory: " + target));
-                    running = false;
-                    return ResponseData.success("No such directory", Map.of("running", "0", "path", getSafeRelativePath()));
-                }
+        // 在锁外输出提示，避免与推送通道的锁交错
+        errors.forEach(error -> emit("err", error));
+        if (result != null) return result;
 
-                // ✅ 先更新当前路径
-                this.currentPath = dir.getCanonicalPath();
+        Map<String, String> map = statusMap();
+        map.put("path", getSafeRelativePath());
+        map.put("ids", String.join(",", ids));
+        if (ids.isEmpty()) {
+            return ResponseData.success(errors.isEmpty() ? "No command" : "Command rejected", map);
+        }
+        return ResponseData.success("Command sent", map);
+    }
 
-                // ✅ 再让真实终端也执行 cd 命令
-                terminalWriter.write("cd \"" + this.currentPath + "\"");
-                terminalWriter.newLine();
-                terminalWriter.flush();
-            } else {
-                // 普通命令直接写入终端
-                terminalWriter.write(command);
-                terminalWriter.newLine();
-                terminalWriter.flush();
+    /**
+     * 转换为写入终端的命令；cd 需先校验目标目录并更新当前路径（调用方持有 stateLock）
+     * @return null 表示命令被拒绝，原因写入 errors
+     */
+    private String toShellCommand(String command, List<String> errors) throws IOException {
+        if (!command.startsWith("cd ")) return command;
+
+        String target = command.trim().substring(3).trim();
+        String resolvedPath = resolvePath(currentPath, target);
+
+        // 检查是否在 rootPath 内
+        if (!isInsideRoot(rootPath, resolvedPath)) {
+            errors.add("Access denied: " + resolvedPath);
+            return null;
+        }
+
+        File dir = new File(resolvedPath);
+        if (!dir.isDirectory()) {
+            errors.add("No such directory: " + target);
+            return null;
+        }
+
+        // ✅ 先更新当前路径
+        this.currentPath = dir.getCanonicalPath();
+
+        // ✅ 再让真实终端也执行 cd 命令
+        return "cd \"" + this.currentPath + "\"";
+    }
+
+    /** 命令成为队首，开始运行（调用方持有 stateLock） */
+    private void start(Command cmd) {
+        cmd.startedAt = System.nanoTime();
+        if (cmd.outStart < 0) cmd.outStart = outBuffer.head();
+        if (cmd.errStart < 0) cmd.errStart = errBuffer.head();
+    }
+
+    /**
+     * 查询某条命令的状态与输出范围
+     * state：queued / running / done；输出范围为 out / err 缓冲区的 seq，可用 output 读取
+     */
+    public ResponseData commandStatus(long id) {
+        Map<String, String> map = new HashMap<>();
+        synchronized (stateLock) {
+            Command cmd = finished.get(id);
+            String state = "done";
+            if (cmd == null) {
+                for (Command c : inFlight) {
+                    if (c.id == id) cmd = c;
+                }
+                if (cmd == null) return ResponseData.error("Unknown command id: " + id);
+                state = cmd == inFlight.peekFirst() ? "running" : "queued";
             }
-        } catch (IOException e) {
-            outputQueue.offer(Map.of("type", "err", "text", "Failed to send command: " + e.getMessage()));
-            running = false;
+            map.put("id", String.valueOf(cmd.id));
+            map.put("command", cmd.text);
+            map.put("state", state);
+            if ("done".equals(state)) {
+                map.put("exitCode", String.valueOf(cmd.exitCode));
+                map.put("durationMs", String.valueOf(cmd.durationMs));
+            } else if ("running".equals(state)) {
+                map.put("durationMs", String.valueOf((System.nanoTime() - cmd.startedAt) / 1_000_000));
+            }
+            map.put("outStart", String.valueOf(cmd.outStart));
+            map.put("outEnd", String.valueOf(cmd.outEnd));
+            map.put("errStart", String.valueOf(cmd.errStart));
+            map.put("errEnd", String.valueOf(cmd.errEnd));
         }
+        return ResponseData.success("Command status", map);
+    }
 
-        return ResponseData.success(
-            "Command sent", 
-                    Map.of(
-                        "running", "1", 
-                        "path", getSafeRelativePath())
-                );
+    /** 读取某条命令的输出（运行中则读到当前位置） */
+    public ResponseData commandOutput(long id) {
+        long outStart;
+        long outEnd;
+        long errStart;
+        long errEnd;
+        synchronized (stateLock) {
+            Command cmd = finished.get(id);
+            if (cmd == null) {
+                for (Command c : inFlight) {
+                    if (c.id == id) cmd = c;
+                }
+            }
+            if (cmd == null) return ResponseData.error("Unknown command id: " + id);
+            if (cmd.outStart < 0) return ResponseData.success("Command is queued", Map.of("id", String.valueOf(id), "out", "", "err", ""));
+            outStart = cmd.outStart;
+            outEnd = cmd.outEnd < 0 ? Long.MAX_VALUE : cmd.outEnd;
+            errStart = cmd.errStart;
+            errEnd = cmd.errEnd < 0 ? Long.MAX_VALUE : cmd.errEnd;
+        }
+        OutputRingBuffer.Chunk out = outBuffer.readRange(outStart, outEnd);
+        OutputRingBuffer.Chunk err = errBuffer.readRange(errStart, errEnd);
+        return ResponseData.success("Command output", Map.of(
+                "id", String.valueOf(id),
+                "out", withDroppedMarker(out),
+                "err", withDroppedMarker(err),
+                "dropped", String.valueOf(out.dropped() + err.dropped())
+        ));
     }
 
-    /** 获取输出 */
-    public ResponseData pollOutput() {
+    /** 获取输出（从默认游标续读） */
+    public synchronized ResponseData pollOutput() {
+        ResponseData data = pollOutput(outCursor, errCursor);
+        outCursor = Long.parseLong(data.getMap().get("outSeq"));
+        errCursor = Long.parseLong(data.getMap().get("errSeq"));
+        return data;
+    }
+
+    /**
+     * 获取指定游标之后的输出
+     * 游标落后于缓冲区时，文本前插入 "[dropped K bytes]" 标记，并在 dropped 中返回丢弃的总字节数
+     */
+    public ResponseData pollOutput(long outSeq, long errSeq) {
+        lastAccessAt = System.currentTimeMillis();
+        OutputRingBuffer.Chunk out = outBuffer.readFrom(outSeq);
+        OutputRingBuffer.Chunk err = errBuffer.readFrom(errSeq);
+
+        Map<String, String> map = statusMap();
+        map.put("out", withDroppedMarker(out));
+        map.put("err", withDroppedMarker(err));
+        map.put("outSeq", String.valueOf(out.nextSeq()));
+        map.put("errSeq", String.valueOf(err.nextSeq()));
+        map.put("dropped", String.valueOf(out.dropped() + err.dropped()));
+        map.put("path", getSafeRelativePath());
+
+        return ResponseData.success("Get output", map);
+    }
+
+    /** 读取某个流在 seq 之后的输出（供推送通道使用） */
+    public OutputRingBuffer.Chunk readOutput(String type, long seq) {
+        return ("err".equals(type) ? errBuffer : outBuffer).readFrom(seq);
+    }
+
+    /** 默认游标位置，推送通道从这里开始接续轮询客户端 */
+    public synchronized long getCursor(String type) {
+        return "err".equals(type) ? errCursor : outCursor;
+    }
+
+    /** 带丢弃标记的文本 */
+    public static String withDroppedMarker(OutputRingBuffer.Chunk chunk) {
+        if (chunk.dropped() == 0) return chunk.text();
+        return "[dropped " + chunk.dropped() + " bytes]\n" + chunk.text();
+    }
+
+    /**
+     * 命令状态
+     * - running：1 有命令在运行 / 0 空闲；queued：排队中的命令数
+     * - id：当前（或最近完成）命令的编号
+     * - exitCode：最近完成命令的退出码（运行中不返回）
+     * - durationMs：运行中为已耗时，空闲时为最近完成命令的耗时
+     */
+    public Map<String, String> statusMap() {
         Map<String, String> map = new HashMap<>();
-        StringBuilder outSb = new StringBuilder();
-        StringBuilder errSb = new StringBuilder();
+        synchronized (stateLock) {
+            Command current = inFlight.peekFirst();
+            map.put("running", current != null ? "1" : "0");
+            map.put("queued", String.valueOf(Math.max(0, inFlight.size() - 1)));
+            if (current != null) {
+                map.put("id", String.valueOf(current.id));
+                map.put("durationMs", String.valueOf((System.nanoTime() - current.startedAt) / 1_000_000));
+            } else if (lastFinished != null) {
+                map.put("id", String.valueOf(lastFinished.id));
+                map.put("exitCode", String.valueOf(lastFinished.exitCode));
+                map.put("durationMs", String.valueOf(lastFinished.durationMs));
+            }
+        }
+        return map;
+    }
+
+    /** 订阅输出与状态事件 */
+    public void addOutputListener(Consumer<String> listener) {
+        listeners.add(listener);
+    }
 
-        Map<String, String> entry;
-        boolean hasOutput = false;
+    public void removeOutputListener(Consumer<String> listener) {
+        listeners.remove(listener);
+    }
 
-        while ((entry = outputQueue.poll()) != null) {
-            hasOutput = true;
-            String type = entry.get("type");
-            String text = entry.get("text");
-            if ("err".equals(type)) errSb.append(text).append("\n");
-            else outSb.append(text).append("\n");
+    /**
+     * 管道数据接收方：剔除命令结束标记后写入对应缓冲区
+     * 末尾不完整的 UTF-8 字符暂存到下一块数据，保证缓冲区内总是完整字符
+     */
+    private final class StreamSink implements PipeReaderService.PipeSink, CommandSentinel.Listener {
+        private final String type;
+        private final CommandSentinel.Scanner scanner = sentinel.newScanner(this);
+        private final byte[] pending = new byte[3];
+        private int pendingLength = 0;
+
+        private StreamSink(String type) {
+            this.type = type;
         }
 
-        // 连续空输出检测
-        if (hasOutput) {
-            emptyPollCount = 0; // 有输出就重置计数
-        } else {
-            emptyPollCount++;
-            if (emptyPollCount >= EMPTY_POLL_LIMIT) {
-                running = false; // 超过空输出次数 → 自动解除运行状态
+        @Override
+        public void onData(byte[] data, int offset, int length) {
+            scanner.feed(data, offset, length);
+        }
+
+        @Override
+        public void onText(byte[] data, int offset, int length) {
+            byte[] bytes = data;
+            if (pendingLength > 0) {
+                bytes = new byte[pendingLength + length];
+                System.arraycopy(pending, 0, bytes, 0, pendingLength);
+                System.arraycopy(data, offset, bytes, pendingLength, length);
+                offset = 0;
+                length = bytes.length;
+                pendingLength = 0;
             }
+            int complete = completeUtf8Length(bytes, offset, length);
+            pendingLength = length - complete;
+            System.arraycopy(bytes, offset + complete, pending, 0, pendingLength);
+            if (complete > 0) append(type, bytes, offset, complete);
         }
 
-        map.put("out", outSb.toString());
-        map.put("err", errSb.toString());
-        map.put("running", running ? "1" : "0");
-        map.put("path", getSafeRelativePath());
+        @Override
+        public void onMarker(long commandId, int exitCode) {
+            commandFinished(type, commandId, exitCode);
+        }
 
-        return ResponseData.success("Get output", map);
+        @Override
+        public void onClose(IOException error) {
+            if (error != null) emit("err", "Read " + type + " failed: " + error.getMessage());
+            // 终端进程退出（例如执行了 exit），结束当前命令
+            if ("out".equals(type)) shellExited();
+        }
     }
 
-    private void readStreamToQueue(InputStream is, String type) {
-        try (BufferedReader reader = new BufferedReader(new InputStreamReader(is))) {
-            String line;
-            while ((line = reader.readLine()) != null) {
-                outputQueue.offer(Map.of("type", type, "text", line));
+    /**
+     * 某个流读到结束标记：该流上本命令的输出到此为止，下一条命令的输出从这里开始
+     * stdout 与 stderr 都读到后命令结束，保证两个流的输出都已入缓冲区
+     */
+    private void commandFinished(String type, long commandId, int exitCode) {
+        synchronized (stateLock) {
+            Command cmd = null;
+            Command next = null;
+            for (Command c : inFlight) {
+                if (cmd != null) {
+                    next = c;
+                    break;
+                }
+                if (c.id == commandId) cmd = c;
+            }
+            if (cmd == null) return;
+
+            if ("err".equals(type)) {
+                cmd.errDone = true;
+                cmd.errEnd = errBuffer.head();
+                if (next != null) next.errStart = cmd.errEnd;
+            } else {
+                cmd.outDone = true;
+                cmd.outEnd = outBuffer.head();
+                cmd.exitCode = exitCode;
+                if (next != null) next.outStart = cmd.outEnd;
+            }
+
+            // 按顺序结束队首已完成的命令，下一条开始计时
+            boolean changed = false;
+            while (!inFlight.isEmpty() && inFlight.peekFirst().outDone && inFlight.peekFirst().errDone) {
+                finish(inFlight.pollFirst());
+                changed = true;
+                if (!inFlight.isEmpty()) start(inFlight.peekFirst());
+            }
+            if (!changed) return;
+        }
+        notifyListeners("status");
+    }
+
+    /** 终端进程退出（例如执行了 exit）：结束全部未完成命令，并从 TerminalManager 移除 */
+    private void shellExited() {
+        TerminalManager.getInstance().exited(this);
+        synchronized (stateLock) {
+            if (inFlight.isEmpty()) return;
+            int exitCode = terminalProcess.isAlive() ? -1 : terminalProcess.exitValue();
+            while (!inFlight.isEmpty()) {
+                Command cmd = inFlight.pollFirst();
+                cmd.exitCode = exitCode;
+                if (cmd.startedAt == 0) start(cmd);
+                if (cmd.outEnd < 0) cmd.outEnd = outBuffer.head();
+                if (cmd.errEnd < 0) cmd.errEnd = errBuffer.head();
+                finish(cmd);
             }
-        } catch (IOException e) {
-            outputQueue.offer(Map.of("type", "err", "text", "Read " + type + " failed: " + e.getMessage()));
         }
+        notifyListeners("status");
+    }
+
+    /** 记录完成的命令（调用方持有 stateLock） */
+    private void finish(Command cmd) {
+        cmd.durationMs = (System.nanoTime() - cmd.startedAt) / 1_000_000;
+        finished.put(cmd.id, cmd);
+        lastFinished = cmd;
+    }
+
+    /** 去掉末尾不完整 UTF-8 字符后的长度 */
+    static int completeUtf8Length(byte[] data, int offset, int length) {
+        for (int back = 1; back <= Math.min(3, length); back++) {
+            int b = data[offset + length - back] & 0xFF;
+            if ((b & 0xC0) == 0x80) continue; // 续字节，继续向前找首字节
+            int expected = b >= 0xF0 ? 4 : b >= 0xE0 ? 3 : b >= 0xC0 ? 2 : 1;
+            return expected > back ? length - back : length;
+        }
+        return length;
+    }
+
+    /** 输出一行提示信息 */
+    private void emit(String type, String text) {
+        byte[] bytes = (text + "\n").getBytes(StandardCharsets.UTF_8);
+        append(type, bytes, 0, bytes.length);
+    }
+
+    /** 写入对应缓冲区并通知订阅者 */
+    private void append(String type, byte[] data, int offset, int length) {
+        lastOutputAt = System.currentTimeMillis();
+        ("err".equals(type) ? errBuffer : outBuffer).append(data, offset, length);
+        scrollback.append(data, offset, length);
+        notifyListeners(type);
+    }
+
+    private void notifyListeners(String event) {
+        for (Consumer<String> listener : listeners) {
+            listener.accept(event);
+        }
+    }
+
+    /** 记录一次客户端活动（推送通道连接、收到消息、断开） */
+    public void touch() {
+        lastAccessAt = System.currentTimeMillis();
+    }
+
+    /** 是否有推送通道连接着 */
+    public boolean hasOutputListeners() {
+        return !listeners.isEmpty();
+    }
+
+    /** 最近活动时间：客户端操作或终端产生输出，取较晚者 */
+    public long getLastActivityAt() {
+        return Math.max(lastAccessAt, lastOutputAt);
+    }
+
+    /** 磁盘滚动历史 */
+    public ScrollbackSpool getScrollback() {
+        return scrollback;
+    }
+
+    public boolean isClosed() {
+        return closed.get();
+    }
+
+    /** 终端进程及其全部子进程（子进程在前） */
+    public List<ProcessHandle> processTree() {
+        List<ProcessHandle> tree = new ArrayList<>(terminalProcess.descendants().toList());
+        Collections.reverse(tree);
+        tree.add(terminalProcess.toHandle());
+        return tree;
+    }
+
+    /** 终端的全部子进程（子进程在前），不含 shell 本身 */
+    public List<ProcessHandle> commandProcesses() {
+        List<ProcessHandle> children = new ArrayList<>(terminalProcess.descendants().toList());
+        Collections.reverse(children);
+        return children;
+    }
+
+    /**
+     * 当前命令运行超过 maxMs 时结束它：结束终端的全部子进程，
+     * 命令在 shell 内部运行（例如 while 循环，没有子进程）时只能结束整个终端
+     * @return 是否结束了命令
+     */
+    public boolean killIfOverrun(long maxMs) {
+        long id;
+        synchronized (stateLock) {
+            Command cmd = inFlight.peekFirst();
+            if (cmd == null || cmd.killed || System.nanoTime() - cmd.startedAt < maxMs * 1_000_000) return false;
+            cmd.killed = true;
+            id = cmd.id;
+        }
+        List<ProcessHandle> children = new ArrayList<>(terminalProcess.descendants().toList());
+        emit("err", "[Command " + id + " exceeded " + maxMs / 1000 + "s and was killed]");
+        if (children.isEmpty()) {
+            terminalProcess.destroyForcibly();
+        } else {
+            Collections.reverse(children);
+            children.forEach(ProcessHandle::destroyForcibly);
+        }
+        return true;
+    }
+
+    /**
+     * 关闭终端：注销管道读取，优雅结束终端进程树
+     * 只有第一次调用生效，并发调用（空闲回收与主动关闭）不会重复关闭
+     * @return 被结束的进程（调用方可在宽限期后强制结束仍存活的进程）；已关闭时返回 null
+     */
+    public List<ProcessHandle> close() {
+        if (!closed.compareAndSet(false, true)) return null;
+        PipeReaderService readers = PipeReaderService.getInstance();
+        readers.unregister(stdoutPipe);
+        readers.unregister(stderrPipe);
+
+        List<ProcessHandle> tree = processTree();
+        tree.forEach(ProcessHandle::destroy);
+        try {
+            terminalWriter.close();
+        } catch (IOException ignored) {
+            // 进程已结束时关闭 stdin 可能失败，忽略
+        }
+        scrollback.close();
+        notifyListeners("closed");
+        return tree;
     }
 
     public String getCurrentPath() {
@@ -159,7 +587,9 @@ public class TerminalExecutor {
     }
 
     public boolean isRunning() {
-        return running;
+        synchronized (stateLock) {
+            return !inFlight.isEmpty();
+        }
     }
 
     /** 解析目标路径（支持绝对、相对、~、..） */
@@ -0,0 +1,189 @@
+package core;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BiConsumer;
+
+/**
+ * TerminalManager
+ * ----------------------------------------
+ * 终端生命周期管理
+ * - sessionId -> (终端 ID -> TerminalExecutor)，每个 session 可开多个终端
+ * - 全局与单 session 的终端数量上限
+ * - 空闲超过 IDLE_TTL_MS 的终端自动回收（session 永不过期，必须主动回收）；
+ *   有命令在运行（例如等待请求的 web 服务）或有 WebSocket 连接着的终端不回收
+ * - 终端进程自行退出（exit、超时被结束）后立即移除，下次 open 启动新终端
+ * - 关闭终端时结束整个进程树，宽限期后仍存活的进程强制结束
+ */
+public final class TerminalManager {
+
+    /** 默认终端 ID（不带 tid 参数的请求使用） */
+    public static final String DEFAULT_TERMINAL = "main";
+
+    /** 全局终端数上限 */
+    private static final int MAX_TERMINALS = Integer.getInteger("core.terminal.maxTotal", 150);
+
+    /** 单个 session 的终端数上限 */
+    private static final int MAX_TERMINALS_PER_SESSION = Integer.getInteger("core.terminal.maxPerSession", 3);
+
+    /** 终端空闲回收时间（毫秒） */
+    private static final long IDLE_TTL_MS = TimeUnit.MINUTES.toMillis(Long.getLong("core.terminal.idleTtlMinutes", 30));
+
+    /** 优雅结束的宽限期（毫秒），之后强制结束 */
+    private static final long KILL_GRACE_MS = 3000;
+
+    private static final TerminalManager INSTANCE = new TerminalManager();
+
+    public static TerminalManager getInstance() {
+        return INSTANCE;
+    }
+
+    private final Map<String, Map<String, TerminalExecutor>> sessions = new ConcurrentHashMap<>();
+    private final AtomicInteger liveCount = new AtomicInteger();
+    private final AtomicLong evictedCount = new AtomicLong();
+    private final AtomicLong reapedCount = new AtomicLong();
+    private final AtomicLong killedCount = new AtomicLong();
+    private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread t = new Thread(r, "terminal-manager");
+        t.setDaemon(true);
+        return t;
+    });
+
+    private TerminalManager() {
+        long checkMs = Math.min(Math.max(1000, IDLE_TTL_MS / 4), TimeUnit.MINUTES.toMillis(1));
+        scheduler.scheduleWithFixedDelay(this::evictIdle, checkMs, checkMs, TimeUnit.MILLISECONDS);
+        Runtime.getRuntime().addShutdownHook(new Thread(this::closeAll, "terminal-manager-shutdown"));
+    }
+
+    /**
+     * 获取或启动终端
+     * @throws IllegalStateException 超出全局或 session 终端上限
+     */
+    public TerminalExecutor open(String sessionId, String terminalId) throws IOException {
+        Map<String, TerminalExecutor> terminals = sessions.computeIfAbsent(sessionId, k -> new ConcurrentHashMap<>());
+        synchronized (terminals) {
+            TerminalExecutor existing = terminals.get(terminalId);
+            if (existing != null && !existing.isClosed()) return existing;
+
+            if (terminals.size() >= MAX_TERMINALS_PER_SESSION) {
+                throw new IllegalStateException("Too many terminals in this session (max " + MAX_TERMINALS_PER_SESSION + ")");
+            }
+            if (liveCount.incrementAndGet() > MAX_TERMINALS) {
+                liveCount.decrementAndGet();
+                throw new IllegalStateException("Too many terminals on server (max " + MAX_TERMINALS + ")");
+            }
+            try {
+                TerminalExecutor executor = new TerminalExecutor();
+                terminals.put(terminalId, executor);
+                return executor;
+            } catch (IOException | RuntimeException e) {
+                liveCount.decrementAndGet();
+                throw e;
+            }
+        }
+    }
+
+    public TerminalExecutor get(String sessionId, String terminalId) {
+        Map<String, TerminalExecutor> terminals = sessions.get(sessionId);
+        return terminals == null ? null : terminals.get(terminalId);
+    }
+
+    /** 关闭 session 下的某个终端 */
+    public boolean close(String sessionId, String terminalId) {
+        Map<String, TerminalExecutor> terminals = sessions.get(sessionId);
+        if (terminals == null) return false;
+        TerminalExecutor executor = terminals.remove(terminalId);
+        if (executor == null) return false;
+        destroy(executor);
+        return true;
+    }
+
+    /** 关闭 session 下的全部终端（session 销毁时调用） */
+    public void closeSession(String sessionId) {
+        Map<String, TerminalExecutor> terminals = sessions.remove(sessionId);
+        if (terminals == null) return;
+        terminals.values().forEach(this::destroy);
+    }
+
+    /** 遍历全部终端（sessionId, 终端） */
+    public void forEach(BiConsumer<String, TerminalExecutor> action) {
+        sessions.forEach((sessionId, terminals) -> terminals.values().forEach(executor -> action.accept(sessionId, executor)));
+    }
+
+    public int getLiveCount() {
+        return liveCount.get();
+    }
+
+    public long getEvictedCount() {
+        return evictedCount.get();
+    }
+
+    public long getReapedCount() {
+        return reapedCount.get();
+    }
+
+    public long getKilledCount() {
+        return killedCount.get();
+    }
+
+    /** 终端进程已退出（由 TerminalExecutor 在 stdout 结束时调用）：关闭并移除，不在管道读取线程上执行 */
+    void exited(TerminalExecutor executor) {
+        scheduler.execute(() -> sessions.forEach((sessionId, terminals) -> {
+            terminals.forEach((terminalId, e) -> {
+                if (e == executor && terminals.remove(terminalId, executor) && destroy(executor)) {
+                    reapedCount.incrementAndGet();
+                    System.out.println("[TERMINAL] Reaped exited terminal " + terminalId + " of session " + sessionId);
+                }
+            });
+            if (terminals.isEmpty()) sessions.remove(sessionId, terminals);
+        }));
+    }
+
+    /** 回收空闲终端 */
+    private void evictIdle() {
+        long deadline = System.currentTimeMillis() - IDLE_TTL_MS;
+        sessions.forEach((sessionId, terminals) -> {
+            terminals.forEach((terminalId, executor) -> {
+                if (executor.isRunning() || executor.hasOutputListeners()) return;
+                if (executor.getLastActivityAt() < deadline && terminals.remove(terminalId, executor) && destroy(executor)) {
+                    evictedCount.incrementAndGet();
+                    System.out.println("[TERMINAL] Evicted idle terminal " + terminalId + " of session " + sessionId);
+                }
+            });
+            if (terminals.isEmpty()) sessions.remove(sessionId, terminals);
+        });
+    }
+
+    /**
+     * 结束终端进程树，宽限期后强制结束仍存活的进程
+     * @return false 表示终端已被其他线程关闭
+     */
+    private boolean destroy(TerminalExecutor executor) {
+        List<ProcessHandle> tree = executor.close();
+        if (tree == null) return false;
+        liveCount.decrementAndGet();
+        killedCount.incrementAndGet();
+        scheduler.schedule(() -> tree.stream().filter(ProcessHandle::isAlive).forEach(ProcessHandle::destroyForcibly),
+                KILL_GRACE_MS, TimeUnit.MILLISECONDS);
+        return true;
+    }
+
+    private void closeAll() {
+        sessions.keySet().forEach(sessionId -> {
+            Map<String, TerminalExecutor> terminals = sessions.remove(sessionId);
+            if (terminals != null) {
+                terminals.values().forEach(executor -> {
+                    List<ProcessHandle> tree = executor.close();
+                    if (tree != null) tree.forEach(ProcessHandle::destroyForcibly);
+                });
+            }
+        });
+    }
+}
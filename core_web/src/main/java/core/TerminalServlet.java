@@ -4,15 +4,16 @@ import jakarta.servlet.http.HttpServlet;
 import jakarta.servlet.http.HttpServletRequest;
 import jakarta.servlet.http.HttpServletResponse;
 import java.io.IOException;
+import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
-import java.util.concurrent.ConcurrentHashMap;
 
 import common.utils.ResponseData;
 
 public class TerminalServlet extends HttpServlet {
 
-    // sessionID -> TerminalExecutor 映射表（线程安全）
-    private static final Map<String, TerminalExecutor> EXECUTOR_MAP = new ConcurrentHashMap<>();
+    /** 终端生命周期管理（sessionID + 终端 ID -> TerminalExecutor） */
+    private static final TerminalManager MANAGER = TerminalManager.getInstance();
 
 
     @Override
@@ -21,43 +22,102 @@ public class TerminalServlet extends HttpServlet {
 
         String action = req.getParameter("action");
         String sessionId = req.getSession(true).getId();
-        TerminalExecutor executor = EXECUTOR_MAP.get(sessionId);
+        String terminalId = req.getParameter("tid") == null ? TerminalManager.DEFAULT_TERMINAL : req.getParameter("tid");
+        TerminalExecutor executor = MANAGER.get(sessionId, terminalId);
 
         try {
             switch (action) {
                 case "start"  -> {
-                    if (executor == null) {
-                        executor = new TerminalExecutor();
-                        EXECUTOR_MAP.put(sessionId, executor);
+                    try {
+                        MANAGER.open(sessionId, terminalId);
+                        ResponseData.success("Terminal executor is started.", Map.of("SID", sessionId, "tid", terminalId)).sendJson(resp);
+                    } catch (IllegalStateException e) {
+                        ResponseData.error(e.getMessage()).sendJson(resp);
                     }
-                    ResponseData.success("Terminal executor is started.", Map.of("SID", sessionId)).sendJson(resp);
                 }
                 case "execute" -> {
                     if (executor == null) {
                         ResponseData.error("Terminal executor is not started").sendJson(resp);
                     } else {
-                        executor.executeCommand(req.getParameter("cmd")).sendJson(resp);
+                        // 可传多个 cmd 参数，按顺序进入队列
+                        executor.executeCommands(List.of(req.getParameterValues("cmd"))).sendJson(resp);
+                    }
+                }
+                case "status" -> {
+                    if (executor == null) {
+                        ResponseData.error("Terminal executor is not started").sendJson(resp);
+                    } else {
+                        executor.commandStatus(Long.parseLong(req.getParameter("id"))).sendJson(resp);
+                    }
+                }
+                case "output" -> {
+                    if (executor == null) {
+                        ResponseData.error("Terminal executor is not started").sendJson(resp);
+                    } else {
+                        executor.commandOutput(Long.parseLong(req.getParameter("id"))).sendJson(resp);
                     }
                 }
                 case "poll" -> {
                     if (executor == null) {
                         ResponseData.error("Terminal executor is not started").sendJson(resp);
                     } else {
-                        executor.pollOutput().sendJson(resp);
+                        String outSeq = req.getParameter("outSeq");
+                        String errSeq = req.getParameter("errSeq");
+                        if (outSeq != null && errSeq != null) {
+                            // 带游标续读：返回 seq 之后的全部输出
+                            executor.pollOutput(Long.parseLong(outSeq), Long.parseLong(errSeq)).sendJson(resp);
+                        } else {
+                            executor.pollOutput().sendJson(resp);
+                        }
                     }
                 }
-                case "close" -> {
-                    if (executor != null) {
-                        EXECUTOR_MAP.remove(sessionId);
+                case "history" -> {
+                    if (executor == null) {
+                        ResponseData.error("Terminal executor is not started").sendJson(resp);
+                        return;
                     }
-                    ResponseData.success("Terminal executor is closed.", Map.of("SID", sessionId)).sendJson(resp);
+                    // 滚动历史：offset + length 按字节，line + lines 按行，否则 tail 取末尾 N 行
+                    ScrollbackSpool scrollback = executor.getScrollback();
+                    if (req.getParameter("offset") != null) {
+                        scrollback.readBytes(Long.parseLong(req.getParameter("offset")),
+                                parseInt(req.getParameter("length"), 64 * 1024)).sendJson(resp);
+                    } else if (req.getParameter("line") != null) {
+                        scrollback.readLines(Long.parseLong(req.getParameter("line")),
+                                parseInt(req.getParameter("lines"), 200)).sendJson(resp);
+                    } else {
+                        scrollback.tail(parseInt(req.getParameter("tail"), 200)).sendJson(resp);
+                    }
+                }
+                case "stats" -> {
+                    PipeReaderService readers = PipeReaderService.getInstance();
+                    Map<String, String> stats = new HashMap<>(ResourceGovernor.getInstance().summary());
+                    stats.put("terminals", String.valueOf(MANAGER.getLiveCount()));
+                    stats.put("evicted", String.valueOf(MANAGER.getEvictedCount()));
+                    stats.put("reaped", String.valueOf(MANAGER.getReapedCount()));
+                    stats.put("killed", String.valueOf(MANAGER.getKilledCount()));
+                    stats.put("activePipes", String.valueOf(readers.getActivePipes()));
+                    stats.put("maxPipes", String.valueOf(readers.getMaxPipes()));
+                    stats.put("idleShells", String.valueOf(ShellPool.getInstance().getIdleCount()));
+                    ResponseData.success("Terminal stats", stats).sendJson(resp);
+                }
+                case "usage" -> {
+                    // 当前 session 全部终端进程的 CPU 时间与内存
+                    ResourceGovernor.getInstance().usage(sessionId).sendJson(resp);
+                }
+                case "close" -> {
+                    MANAGER.close(sessionId, terminalId);
+                    ResponseData.success("Terminal executor is closed.", Map.of("SID", sessionId, "tid", terminalId)).sendJson(resp);
                 }
                 default -> {
                     ResponseData.error("Unknown action: " + action).sendJson(resp);
                 }
             }
         } catch (Exception e) {
-            ResponseData.error("Terminal servlet error cause : " + e.getMessage());
+            ResponseData.error("Terminal servlet error cause : " + e.getMessage()).sendJson(resp);
         }
     }
+
+    private static int parseInt(String value, int defaultValue) {
+        return value == null ? defaultValue : Integer.parseInt(value);
+    }
 }
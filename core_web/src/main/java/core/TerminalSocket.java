@@ -0,0 +1,275 @@
+package core;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.eclipse.jetty.websocket.api.Session;
+import org.eclipse.jetty.websocket.api.StatusCode;
+import org.eclipse.jetty.websocket.api.WriteCallback;
+import org.eclipse.jetty.websocket.api.annotations.OnWebSocketClose;
+import org.eclipse.jetty.websocket.api.annotations.OnWebSocketConnect;
+import org.eclipse.jetty.websocket.api.annotations.OnWebSocketError;
+import org.eclipse.jetty.websocket.api.annotations.OnWebSocketMessage;
+import org.eclipse.jetty.websocket.api.annotations.WebSocket;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.function.Consumer;
+
+import common.utils.ResponseData;
+
+/**
+ * TerminalSocket
+ * ----------------------------------------
+ * 终端的 WebSocket 推送通道（/terminal/ws）
+ * - 服务端：stdout/stderr 一产生即推送 {"type":"out|err","text":"..."}
+ * - 客户端：发送的文本消息即为要执行的命令，回复 {"type":"status",...}
+ * - 终端需先通过 /terminal?action=start 启动，轮询接口保留作为回退
+ * - 连接时可带 outSeq / errSeq 参数从指定游标续读，否则从轮询默认游标开始
+ * - tid 参数指定终端 ID，缺省为 TerminalManager.DEFAULT_TERMINAL
+ * - 发送是异步的，每个连接同时只有一帧在写；事件由共享的管道读取线程触发，慢连接不会阻塞它们。
+ *   输出与状态只记待发送标记，写完上一帧后才按游标读取，连接停滞期间被环形缓冲区覆盖的输出以丢弃提示代替；
+ *   命令回复逐条排队，积压超过 MAX_PENDING_REPLIES 时关闭连接
+ */
+@WebSocket
+public class TerminalSocket {
+
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
+    /** 未发出的命令回复上限 */
+    private static final int MAX_PENDING_REPLIES = 64;
+
+    private final String sessionId;
+    private final String terminalId;
+    private final Long resumeOutSeq;
+    private final Long resumeErrSeq;
+    private Session session;
+    private TerminalExecutor executor;
+
+    /** 本连接在 out / err 缓冲区中的游标 */
+    private long outSeq;
+    private long errSeq;
+
+    /** 以下发送状态由 this 加锁保护 */
+    private final ArrayDeque<String> replies = new ArrayDeque<>();
+    private boolean outPending;
+    private boolean errPending;
+    private boolean statusPending;
+    /** 命令提交中：其间的状态推送推迟到回复之后 */
+    private boolean submitting;
+    /** 有一帧已交给 Jetty、尚未写完 */
+    private boolean writing;
+
+    /** 串行提交命令，保证回复顺序 */
+    private final Object commandLock = new Object();
+
+    private final WriteCallback written = new WriteCallback() {
+        @Override
+        public void writeSuccess() {
+            synchronized (TerminalSocket.this) {
+                writing = false;
+            }
+            pump();
+        }
+
+        @Override
+        public void writeFailed(Throwable cause) {
+            synchronized (TerminalSocket.this) {
+                writing = false;
+            }
+            release();
+        }
+    };
+
+    private final Consumer<String> listener = this::onEvent;
+
+    public TerminalSocket(String sessionId, String terminalId, Long resumeOutSeq, Long resumeErrSeq) {
+        this.sessionId = sessionId;
+        this.terminalId = terminalId;
+        this.resumeOutSeq = resumeOutSeq;
+        this.resumeErrSeq = resumeErrSeq;
+    }
+
+    @OnWebSocketConnect
+    public void onConnect(Session session) {
+        this.session = session;
+        this.executor = TerminalManager.getInstance().get(sessionId, terminalId);
+        if (executor == null) {
+            send(Map.of("type", "status", "message", "Terminal executor is not started", "status", "500"));
+            session.close();
+            return;
+        }
+
+        executor.touch();
+        outSeq = resumeOutSeq != null ? resumeOutSeq : executor.getCursor("out");
+        errSeq = resumeErrSeq != null ? resumeErrSeq : executor.getCursor("err");
+
+        // 先订阅再补发，订阅前积压的输出按游标一并推送，不会丢失或重复
+        executor.addOutputListener(listener);
+        synchronized (this) {
+            outPending = true;
+            errPending = true;
+            statusPending = true;
+        }
+        pump();
+    }
+
+    /** 提交期间推迟状态推送，保证命令回复先于该命令的结束状态 */
+    @OnWebSocketMessage
+    public void onMessage(String command) {
+        if (executor == null) return;
+        executor.touch();
+        if (command == null || command.isBlank()) return;
+        synchronized (commandLock) {
+            synchronized (this) {
+                submitting = true;
+            }
+            ResponseData data;
+            try {
+                data = executor.executeCommand(command.trim());
+            } finally {
+                synchronized (this) {
+                    submitting = false;
+                }
+            }
+            sendResponse(data);
+        }
+    }
+
+    @OnWebSocketClose
+    public void onClose(int statusCode, String reason) {
+        release();
+    }
+
+    @OnWebSocketError
+    public void onError(Throwable cause) {
+        release();
+    }
+
+    /** 终端事件：输出、命令状态变化、终端关闭 */
+    private void onEvent(String event) {
+        switch (event) {
+            case "out" -> {
+                synchronized (this) {
+                    outPending = true;
+                }
+                pump();
+            }
+            case "err" -> {
+                synchronized (this) {
+                    errPending = true;
+                }
+                pump();
+            }
+            case "status" -> {
+                synchronized (this) {
+                    statusPending = true;
+                }
+                pump();
+            }
+            case "closed" -> {
+                // 终端已关闭或被回收
+                release();
+                session.close();
+            }
+            default -> { }
+        }
+    }
+
+    /** 状态帧 */
+    private Map<String, String> statusFrame() {
+        Map<String, String> frame = executor.statusMap();
+        boolean running = "1".equals(frame.get("running"));
+        frame.put("type", "status");
+        frame.put("status", "200");
+        frame.put("message", running ? "Terminal is running..." : "Terminal is waiting...");
+        return frame;
+    }
+
+    /** 按本连接的游标读取某个流的新输出，没有时为 null */
+    private Map<String, String> outputFrame(String type) {
+        boolean isErr = "err".equals(type);
+        OutputRingBuffer.Chunk chunk = executor.readOutput(type, isErr ? errSeq : outSeq);
+        if (isErr) errSeq = chunk.nextSeq(); else outSeq = chunk.nextSeq();
+        if (chunk.isEmpty()) return null;
+        return Map.of("type", type, "text", TerminalExecutor.withDroppedMarker(chunk), "seq", String.valueOf(chunk.nextSeq()));
+    }
+
+    private void sendResponse(ResponseData data) {
+        Map<String, String> frame = new HashMap<>(data.getMap() == null ? Map.of() : data.getMap());
+        frame.put("type", "status");
+        frame.put("status", String.valueOf(data.getStatus()));
+        frame.put("message", data.getMessage());
+        send(frame);
+    }
+
+    /** 错误等直接发送的帧：排在命令回复队列中 */
+    private void send(Map<String, String> frame) {
+        boolean overflow;
+        synchronized (this) {
+            try {
+                replies.addLast(MAPPER.writeValueAsString(frame));
+            } catch (IOException e) {
+                return;
+            }
+            overflow = replies.size() > MAX_PENDING_REPLIES;
+        }
+        if (overflow) {
+            // 客户端长时间不读取
+            release();
+            Session s = this.session;
+            if (s != null) s.close(StatusCode.POLICY_VIOLATION, "Client is not reading");
+            return;
+        }
+        pump();
+    }
+
+    /**
+     * 上一帧写完后发送下一帧（不等待写完）；顺序为命令回复、stdout、stderr、状态
+     * 输出在这里才按游标读取，积压期间的多次通知合并为一帧
+     */
+    private void pump() {
+        Session s = this.session;
+        if (s == null || !s.isOpen()) return;
+        String text;
+        synchronized (this) {
+            if (writing) return;
+            text = nextFrame();
+            if (text == null) return;
+            writing = true;
+        }
+        s.getRemote().sendString(text, written);
+    }
+
+    /** 调用方持有 this */
+    private String nextFrame() {
+        if (!replies.isEmpty()) return replies.pollFirst();
+        if (executor == null) return null;
+        Map<String, String> frame = null;
+        if (outPending) {
+            outPending = false;
+            frame = outputFrame("out");
+        }
+        if (frame == null && errPending) {
+            errPending = false;
+            frame = outputFrame("err");
+        }
+        if (frame == null && statusPending && !submitting) {
+            statusPending = false;
+            frame = statusFrame();
+        }
+        if (frame == null) return null;
+        try {
+            return MAPPER.writeValueAsString(frame);
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    private void release() {
+        if (executor == null) return;
+        executor.removeOutputListener(listener);
+        // 空闲回收从断开时开始计时
+        executor.touch();
+    }
+}
@@ -0,0 +1,197 @@
+package core;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * WriteDurability
+ * ----------------------------------------
+ * 文件保存的持久化方式（core.write.durability，按部署选择）
+ * - none：只做原子替换，不刷盘；掉电可能丢失最近的保存
+ * - fsync：每次保存先刷写临时文件，替换后再刷写所在目录，返回时已落盘
+ * - group：组提交。保存请求交给后台刷盘线程，上一批刷盘期间到达的请求作为下一批，
+ *   整批的临时文件并行刷写，同一目录只刷写一次，然后一起返回；保证与 fsync 相同。
+ *   只在 fsync 代价高（每次数毫秒）且大量 session 同时保存时有优势；fsync 很快或并发低时，
+ *   多出的线程交接使它比 fsync 慢（可用 WriteDurabilityBenchmark 在部署的磁盘上比较）
+ * 默认 fsync；配置值无效时打印警告并使用默认值
+ * 返回值为实际达到的保证，刷写目录失败（部分文件系统不支持）时为 fsync-data
+ */
+public final class WriteDurability {
+
+    public enum Mode { NONE, FSYNC, GROUP }
+
+    /** 组提交在取到第一个请求后额外等待的时间（毫秒），默认不等待，只合并刷盘期间到达的请求 */
+    private static final long GROUP_WINDOW_MS = Long.getLong("core.write.groupCommitMs", 0);
+
+    /** 组提交并行刷写文件的线程数 */
+    private static final int SYNC_THREADS = Integer.getInteger("core.write.syncThreads", 8);
+
+    private static final WriteDurability INSTANCE = new WriteDurability(configuredMode());
+
+    public static WriteDurability getInstance() {
+        return INSTANCE;
+    }
+
+    private static Mode configuredMode() {
+        String value = System.getProperty("core.write.durability", "fsync");
+        try {
+            return Mode.valueOf(value.trim().toUpperCase(Locale.ROOT));
+        } catch (IllegalArgumentException e) {
+            System.err.println("[WriteDurability] Unknown core.write.durability '" + value + "', using fsync");
+            return Mode.FSYNC;
+        }
+    }
+
+    /** 一个等待组提交的保存 */
+    private record Pending(Path temp, Path target, CompletableFuture<String> done) {}
+
+    private final Mode mode;
+    private final LinkedBlockingQueue<Pending> queue = new LinkedBlockingQueue<>();
+    /** 组提交时并行执行 fsync 的线程 */
+    private final ExecutorService syncPool;
+
+    WriteDurability(Mode mode) {
+        this.mode = mode;
+        if (mode == Mode.GROUP) {
+            AtomicInteger count = new AtomicInteger();
+            syncPool = Executors.newFixedThreadPool(SYNC_THREADS, r -> {
+                Thread t = new Thread(r, "write-sync-" + count.incrementAndGet());
+                t.setDaemon(true);
+                return t;
+            });
+            Thread t = new Thread(this::flushLoop, "write-flusher");
+            t.setDaemon(true);
+            t.start();
+        } else {
+            syncPool = null;
+        }
+    }
+
+    public Mode mode() {
+        return mode;
+    }
+
+    /**
+     * 把写好的临时文件（与目标同目录）替换为目标文件，按模式刷盘
+     * @return 达到的保证：none / fsync / fsync-data
+     */
+    public String commit(Path temp, Path target) throws IOException {
+        switch (mode) {
+            case NONE -> {
+                ProjectManager.moveIntoPlace(temp, target);
+                return "none";
+            }
+            case FSYNC -> {
+                force(temp);
+                ProjectManager.moveIntoPlace(temp, target);
+                return forceDirectory(target.getParent()) ? "fsync" : "fsync-data";
+            }
+            default -> {
+                Pending pending = new Pending(temp, target, new CompletableFuture<>());
+                queue.add(pending);
+                try {
+                    return pending.done().get();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new IOException("Interrupted while waiting for group commit", e);
+                } catch (ExecutionException e) {
+                    throw e.getCause() instanceof IOException io ? io : new IOException(e.getCause());
+                }
+            }
+        }
+    }
+
+    /**
+     * 刷盘线程：取出已排队的全部请求为一批，并行刷写全部临时文件，再依次替换，最后并行刷写涉及的目录
+     * 刷盘期间新到的请求排队，成为下一批
+     */
+    private void flushLoop() {
+        List<Pending> batch = new ArrayList<>();
+        while (true) {
+            try {
+                batch.add(queue.take());
+                if (GROUP_WINDOW_MS > 0) TimeUnit.MILLISECONDS.sleep(GROUP_WINDOW_MS);
+                queue.drainTo(batch);
+
+                List<Future<?>> forced = new ArrayList<>(batch.size());
+                for (Pending p : batch) {
+                    forced.add(syncPool.submit(() -> {
+                        force(p.temp());
+                        return null;
+                    }));
+                }
+                List<Pending> moved = new ArrayList<>();
+                Set<Path> dirs = new LinkedHashSet<>();
+                for (int i = 0; i < batch.size(); i++) {
+                    Pending p = batch.get(i);
+                    try {
+                        await(forced.get(i));
+                        ProjectManager.moveIntoPlace(p.temp(), p.target());
+                        moved.add(p);
+                        dirs.add(p.target().getParent());
+                    } catch (IOException | RuntimeException e) {
+                        p.done().completeExceptionally(e);
+                    }
+                }
+
+                Map<Path, Future<Boolean>> dirSyncs = new HashMap<>();
+                for (Path dir : dirs) dirSyncs.put(dir, syncPool.submit(() -> forceDirectory(dir)));
+                for (Pending p : moved) {
+                    boolean synced;
+                    try {
+                        synced = await(dirSyncs.get(p.target().getParent()));
+                    } catch (IOException e) {
+                        synced = false;
+                    }
+                    p.done().complete(synced ? "fsync" : "fsync-data");
+                }
+            } catch (InterruptedException e) {
+                return;
+            } finally {
+                batch.clear();
+            }
+        }
+    }
+
+    /** 等待刷盘线程的结果，失败原因作为 IOException 抛出 */
+    private static <T> T await(Future<T> future) throws IOException, InterruptedException {
+        try {
+            return future.get();
+        } catch (ExecutionException e) {
+            throw e.getCause() instanceof IOException io ? io : new IOException(e.getCause());
+        }
+    }
+
+    private static void force(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE)) {
+            channel.force(true);
+        }
+    }
+
+    /** 刷写目录项，使替换（重命名）本身持久化；不支持时返回 false */
+    private static boolean forceDirectory(Path dir) {
+        try (FileChannel channel = FileChannel.open(dir, StandardOpenOption.READ)) {
+            channel.force(true);
+            return true;
+        } catch (IOException e) {
+            return false;
+        }
+    }
+}
@@ -0,0 +1,87 @@
+package core;
+
+import jakarta.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.nio.file.FileVisitOption;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+/**
+ * ZipTransfer
+ * ----------------------------------------
+ * 把项目中的一组文件或目录打包成 zip，边遍历边写入响应流
+ * - 不生成临时文件，内存占用与压缩包大小无关（每次只有一个文件的缓冲区）
+ * - 跳过 target 目录；符号链接不跟随
+ * 响应头发出后再出错只能中断连接，客户端会得到不完整的压缩包
+ */
+final class ZipTransfer {
+
+    /** 不打包的目录名（构建输出） */
+    private static final String EXCLUDED_DIR = "target";
+
+    private ZipTransfer() {}
+
+    /**
+     * @param root  项目根目录（条目名相对于它）
+     * @param paths 要打包的文件或目录，均已经过 ProjectManager.resolvePath 检查
+     */
+    static void send(HttpServletResponse resp, Path root, List<Path> paths, String fileName) throws IOException {
+        resp.setStatus(HttpServletResponse.SC_OK);
+        resp.setContentType("application/zip");
+        resp.setHeader("Content-Disposition", "attachment; filename=\"" + fileName + "\"");
+        resp.setHeader("Cache-Control", "no-store");
+
+        // 去掉重复的路径与已被其他所选目录包含的路径，否则会写出重复条目
+        List<Path> selected = paths.stream().distinct()
+                .filter(p -> paths.stream().noneMatch(other -> !other.equals(p) && p.startsWith(other)))
+                .toList();
+        try (ZipOutputStream zip = new ZipOutputStream(resp.getOutputStream())) {
+            for (Path path : selected) {
+                Files.walkFileTree(path, EnumSet.noneOf(FileVisitOption.class), Integer.MAX_VALUE, new SimpleFileVisitor<>() {
+                    @Override
+                    public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) throws IOException {
+                        if (!dir.equals(root) && dir.getFileName().toString().equals(EXCLUDED_DIR)) {
+                            return FileVisitResult.SKIP_SUBTREE;
+                        }
+                        if (!dir.equals(root)) {
+                            ZipEntry entry = new ZipEntry(entryName(root, dir) + "/");
+                            entry.setLastModifiedTime(attrs.lastModifiedTime());
+                            zip.putNextEntry(entry);
+                            zip.closeEntry();
+                        }
+                        return FileVisitResult.CONTINUE;
+                    }
+
+                    @Override
+                    public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException {
+                        if (!attrs.isRegularFile()) return FileVisitResult.CONTINUE;
+                        ZipEntry entry = new ZipEntry(entryName(root, file));
+                        entry.setLastModifiedTime(attrs.lastModifiedTime());
+                        zip.putNextEntry(entry);
+                        Files.copy(file, zip);
+                        zip.closeEntry();
+                        return FileVisitResult.CONTINUE;
+                    }
+
+                    @Override
+                    public FileVisitResult visitFileFailed(Path file, IOException e) {
+                        // 遍历期间被删除或不可读的文件直接跳过
+                        return FileVisitResult.CONTINUE;
+                    }
+                });
+            }
+        }
+    }
+
+    /** zip 条目名统一使用 / 分隔 */
+    private static String entryName(Path root, Path path) {
+        return root.relativize(path).toString().replace(path.getFileSystem().getSeparator(), "/");
+    }
+}
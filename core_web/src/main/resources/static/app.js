@@ -7,7 +7,6 @@ document.addEventListener("DOMContentLoaded", () => {
     const projectSelect = document.getElementById("projectSelect");
     const statusBar = document.getElementById("statusBar");
     const fileList = document.getElementById("fileList");
-    const fileList = document.getElementById("fileList");
 
     const editor = document.getElementById("editor");
     const compileBtn = document.getElementById("compileBtn");
@@ -25,6 +24,8 @@ document.addEventListener("DOMContentLoaded", () => {
     let failCount = 0;
     const maxFail = 5;
     let currentFilePath = "";
+    let savedContent = null; // 服务器上的内容（最近一次读取或保存）
+    let savedHash = null;    // 其 SHA-256，已知时保存只上传改动的范围
     let currentProjectName = "";
 
     // --- 系统操作 ---
@@ -130,16 +131,65 @@ document.addEventListener("DOMContentLoaded", () => {
 
     let polling = false;
 
+    // --- WebSocket 推送通道（不可用时回退到轮询） ---
+    let socket = null;
+    const outputSeq = {}; // 各输出流已接收的游标，重连时续读
+
+    function appendChunk(text, type) {
+        text.split("\n").forEach(line => line && appendConsole(line, type));
+    }
+
+    function openSocket() {
+        if (socket || !("WebSocket" in window)) return;
+        const protocol = location.protocol === "https:" ? "wss" : "ws";
+        const resume = outputSeq.out !== undefined && outputSeq.err !== undefined
+            ? `?outSeq=${outputSeq.out}&errSeq=${outputSeq.err}` : "";
+        const ws = new WebSocket(`${protocol}://${location.host}/terminal/ws${resume}`);
+        ws.onopen = () => { socket = ws; };
+        ws.onmessage = (event) => {
+            const frame = JSON.parse(event.data);
+            if (frame.type === "out" || frame.type === "err") {
+                outputSeq[frame.type] = frame.seq;
+                appendChunk(frame.text, frame.type);
+                return;
+            }
+            if (frame.path) {
+                current_path = frame.path;
+                updateTerminalPrompt(current_path, currentProjectName);
+            }
+            if (frame.status !== "200") {
+                viewStatus(frame.message, "red");
+            } else if (frame.running === "1") {
+                viewStatus("Terminal is running...", "orange");
+            } else if (frame.running === "0") {
+                viewCommandResult(frame);
+            }
+        };
+        ws.onclose = () => { if (socket === ws) socket = null; };
+    }
+
+    // 命令结束：显示退出码与耗时
+    function viewCommandResult(state) {
+        if (state.exitCode === undefined) {
+            viewStatus("Terminal is waiting...", "green");
+            return;
+        }
+        viewStatus(`Terminal is waiting... (exit ${state.exitCode}, ${state.durationMs} ms)`,
+            state.exitCode === "0" ? "green" : "orange");
+    }
+
     function startExecutor() {
         fetch(`/terminal?action=start`)
             .then(res => res.json().then(data => ({ ...data, status: res.status })))
             .then(({ status, message, map }) => {
                 viewStatus(message, status == 200 ? "green" : "red");
+                if (status == 200) openSocket();
             })
             .catch(err => viewStatus(`Start executor failed : ${err}`));
     }
 
     function closeExecutor() {
+        if (socket) socket.close();
         fetch(`/terminal?action=close`)
             .then(res => res.json().then(data => ({ ...data, status: res.status })))
             .then(({ status, message, map }) => {
@@ -152,6 +202,11 @@ document.addEventListener("DOMContentLoaded", () => {
         const cmd = consoleInput.value.trim();
         if (!cmd) return;
         appendConsole(`~${current_path} > ${cmd}`);
+        if (socket && socket.readyState === WebSocket.OPEN) {
+            socket.send(cmd);
+            consoleInput.value = "";
+            return;
+        }
         fetch(`/terminal?action=execute&cmd=${encodeURIComponent(cmd)}`)
             .then(res => res.json().then(data => ({ ...data, status: res.status })))
             .then(({ status, message, map }) => {
@@ -192,7 +247,7 @@ document.addEventListener("DOMContentLoaded", () => {
                         viewStatus("Terminal is running...", "orange");
                         setTimeout(pollOutput, 100); // 0.1 秒轮询
                     } else {
-                        viewStatus("Terminal is waiting...", "green");
+                        viewCommandResult(map);
                         polling = false;
                     }
                 } else {
@@ -316,16 +371,21 @@ document.addEventListener("DOMContentLoaded", () => {
 
     function readFile() {
         const projectName = projectSelect.value;
-        fetch(`/project?action=read_file&path=${currentFilePath}&project=${projectName}`)
-            .then(res => res.json().then(data => ({ ...data, status: res.status })))
-            .then(({ status, message, map }) => {
+        // 原样读取：未修改的文件由浏览器缓存经 ETag 验证后直接复用
+        fetch(`/project?action=raw&path=${encodeURIComponent(currentFilePath)}&project=${projectName}`)
+            .then(res => res.ok
+                ? res.text().then(content => ({ status: res.status, content }))
+                : res.json().then(data => ({ ...data, status: res.status })))
+            .then(({ status, message, content }) => {
                 if (status != 200) {
                     viewStatus(message, "red");
                     return;
                 }
-                viewStatus(`${message}: ${map.file}`, "green");
+                viewStatus(`Read file success: ${currentFilePath}`, "green");
                 cleanEditor();
-                editor.value = map.content;
+                editor.value = content;
+                savedContent = content;
+                savedHash = null;
             })
             .catch(err => viewStatus(`Read file failed : ${err}`, "red"));
     }
@@ -333,20 +393,52 @@ document.addEventListener("DOMContentLoaded", () => {
     function writeFile() {
         const projectName = projectSelect.value;
         const content = editor.value;
-        fetch(`/project?action=write_file&path=${currentFilePath}&project=${projectName}`, {
-            method: "POST",
-            headers: {
-                "Content-Type": "text/plain; charset=UTF-8"
-            },
-            body: content
-        })
+        if (content === savedContent && savedHash) {
+            viewStatus("No changes", "green");
+            return;
+        }
+        const request = savedHash
+            // 增量保存：只上传与上次保存内容不同的一段
+            ? fetch(`/project?action=patch&path=${encodeURIComponent(currentFilePath)}&project=${projectName}`, {
+                method: "POST",
+                headers: { "Content-Type": "application/json; charset=UTF-8" },
+                body: JSON.stringify({ base: savedHash, edits: [diffRange(savedContent, content)] })
+            })
+            : fetch(`/project?action=write_file&path=${encodeURIComponent(currentFilePath)}&project=${projectName}`, {
+                method: "POST",
+                headers: { "Content-Type": "text/plain; charset=UTF-8" },
+                body: content
+            });
+        request
             .then(res => res.json().then(data => ({ ...data, status: res.status })))
-            .then(({ status, message }) => {
+            .then(({ status, message, map }) => {
+                if (status == 409) {
+                    viewStatus("File changed on server, reopen it before saving", "red");
+                    return;
+                }
+                if (status == 200) {
+                    savedContent = content;
+                    savedHash = map.sha256;
+                }
                 viewStatus(message, status == 200 ? "green" : "red");
             })
             .catch(err => viewStatus(`Write file failed: ${err}`, "red"));
     }
 
+    /** 两段文本的差异：去掉相同的开头与结尾后剩下的一段替换 */
+    function diffRange(oldText, newText) {
+        let start = 0;
+        const max = Math.min(oldText.length, newText.length);
+        while (start < max && oldText[start] === newText[start]) start++;
+        let oldEnd = oldText.length;
+        let newEnd = newText.length;
+        while (oldEnd > start && newEnd > start && oldText[oldEnd - 1] === newText[newEnd - 1]) {
+            oldEnd--;
+            newEnd--;
+        }
+        return { start, end: oldEnd, text: newText.slice(start, newEnd) };
+    }
+
     createProjectBtn.addEventListener("click", () => {
         const projectType = document.getElementById("projectType").value;
         const projectName = document.getElementById("projectName").value;
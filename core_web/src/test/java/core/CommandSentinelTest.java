@@ -0,0 +1,134 @@
+package core;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import org.junit.Test;
+import static org.junit.Assert.*;
+import static org.junit.Assume.assumeTrue;
+
+public class CommandSentinelTest {
+
+    private final CommandSentinel sentinel = new CommandSentinel(false);
+    private final String marker = marker(sentinel);
+    private final ByteArrayOutputStream text = new ByteArrayOutputStream();
+    private final List<String> markers = new ArrayList<>();
+    private final CommandSentinel.Scanner scanner = sentinel.newScanner(new CommandSentinel.Listener() {
+        @Override
+        public void onText(byte[] data, int offset, int length) {
+            text.write(data, offset, length);
+        }
+
+        @Override
+        public void onMarker(long commandId, int exitCode) {
+            markers.add(commandId + ":" + exitCode);
+        }
+    });
+
+    /** marker 随机生成，从 wrap 的输出中取出 */
+    private static String marker(CommandSentinel sentinel) {
+        Matcher m = Pattern.compile("__CW_[0-9a-f]{16}__").matcher(sentinel.wrap(1, "true"));
+        assertTrue(m.find());
+        return m.group();
+    }
+
+    private void feed(String s) {
+        byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+        scanner.feed(bytes, 0, bytes.length);
+    }
+
+    private String text() {
+        return text.toString(StandardCharsets.UTF_8);
+    }
+
+    @Test
+    public void markerIsRemovedFromOutput() {
+        feed("out\n" + marker + ":7:0\n" + marker + ":8:130\r\nnext");
+        assertEquals("out\nnext", text());
+        assertEquals(List.of("7:0", "8:130"), markers);
+    }
+
+    /** 标记行在任意位置被拆成两次读取 */
+    @Test
+    public void markerSplitAcrossReads() {
+        String output = "out\n" + marker + ":42:3\nnext";
+        for (int split = 0; split <= output.length(); split++) {
+            text.reset();
+            markers.clear();
+            feed(output.substring(0, split));
+            feed(output.substring(split));
+            assertEquals("split at " + split, "out\nnext", text());
+            assertEquals("split at " + split, List.of("42:3"), markers);
+        }
+    }
+
+    @Test
+    public void markerFedByteByByte() {
+        for (char c : ("a" + marker + ":5:1\nb").toCharArray()) feed(String.valueOf(c));
+        assertEquals("ab", text());
+        assertEquals(List.of("5:1"), markers);
+    }
+
+    /** 用户输出中形似标记的文本原样保留 */
+    @Test
+    public void markerLikeOutputIsText() {
+        String other = "__CW_0123456789abcdef__:1:0\n";
+        String badSuffix = marker + ":x:0\n" + marker + ":1\n" + marker + "\n";
+        feed(other + badSuffix);
+        assertEquals(other + badSuffix, text());
+        assertTrue(markers.isEmpty());
+    }
+
+    /** marker 之后过长仍没有换行，不再等待 */
+    @Test
+    public void unterminatedMarkerIsReleased() {
+        String output = marker + ":" + "1".repeat(100);
+        feed(output);
+        assertEquals(output, text());
+        assertTrue(markers.isEmpty());
+    }
+
+    /** 末尾的 marker 前缀暂存，后续不是 marker 时作为普通输出 */
+    @Test
+    public void partialPrefixIsHeld() {
+        feed("abc" + marker.substring(0, 6));
+        assertEquals("abc", text());
+        feed("!\n");
+        assertEquals("abc" + marker.substring(0, 6) + "!\n", text());
+    }
+
+    @Test
+    public void ansiQuoteEscapes() {
+        assertEquals("$'it\\'s'", CommandSentinel.ansiQuote("it's"));
+        assertEquals("$'a\\\\b'", CommandSentinel.ansiQuote("a\\b"));
+        assertEquals("$'a\\nb'", CommandSentinel.ansiQuote("a\nb"));
+        assertEquals("$'a\\x09b\\x0d\\x7f'", CommandSentinel.ansiQuote("a\tb\r\u007f"));
+        assertEquals("$'ab'", CommandSentinel.ansiQuote("a\0b"));
+        assertEquals("$'中文 $HOME \"x\"'", CommandSentinel.ansiQuote("中文 $HOME \"x\""));
+    }
+
+    /** bash 还原出的字符串与原文相同 */
+    @Test
+    public void ansiQuoteRoundTripsThroughBash() throws Exception {
+        assumeTrue(new File("/bin/bash").canExecute());
+        String original = "echo 'a' \"b\" \\c $d `e`\nline2\t\\\\'\\n";
+        Process process = new ProcessBuilder("/bin/bash", "-c", "printf %s " + CommandSentinel.ansiQuote(original))
+                .redirectErrorStream(true)
+                .start();
+        String output = new String(process.getInputStream().readAllBytes(), StandardCharsets.UTF_8);
+        assertEquals(0, process.waitFor());
+        assertEquals(original, output);
+    }
+
+    @Test
+    public void wrapKeepsCommandOnOneLine() {
+        String wrapped = sentinel.wrap(9, "cat <<EOF\nx\nEOF");
+        assertEquals(1, wrapped.split("\n", -1).length - 1);
+        assertTrue(wrapped.endsWith("\n"));
+        assertTrue(wrapped.contains(marker + " 9 $__cw_rc"));
+    }
+}
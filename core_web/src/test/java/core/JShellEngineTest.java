@@ -0,0 +1,68 @@
+package core;
+
+import common.utils.ResponseData;
+import org.junit.After;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+public class JShellEngineTest {
+
+    private static final String SESSION = "jshell-engine-test";
+
+    @After
+    public void close() {
+        JShellEngine.closeSession(SESSION);
+    }
+
+    /** 没有提供输入时 System.in 为空：读取立即得到 EOF，不会阻塞在服务器的标准输入上 */
+    @Test(timeout = 30_000)
+    public void scannerWithoutInputDoesNotBlock() {
+        ResponseData data = JShellEngine.open(SESSION).eval("new java.util.Scanner(System.in).nextLine()", null);
+        assertTrue(data.getMap().get("result"), data.getMap().get("result").contains("NoSuchElementException"));
+    }
+
+    @Test(timeout = 30_000)
+    public void scannerReadsRequestInput() {
+        ResponseData data = JShellEngine.open(SESSION).eval("new java.util.Scanner(System.in).nextLine()", "hello\n");
+        assertTrue(data.getMap().get("result"), data.getMap().get("result").contains("\"hello\""));
+    }
+
+    @Test(timeout = 30_000)
+    public void outputIsCaptured() {
+        ResponseData data = JShellEngine.open(SESSION).eval("System.out.print(\"out\"); System.err.print(\"err\");", null);
+        assertEquals("out", data.getMap().get("out"));
+        assertEquals("err", data.getMap().get("err"));
+    }
+
+    /** 退出 JVM 只结束 session 的子 JVM，之后自动启动新的 */
+    @Test(timeout = 60_000)
+    public void exitOnlyEndsTheSessionJvm() {
+        JShellEngine engine = JShellEngine.open(SESSION);
+        ResponseData exit = engine.eval("Runtime.getRuntime().exit(0);", null);
+        assertTrue(exit.getMap().get("result"), exit.getMap().get("result").contains("JVM exited"));
+
+        ResponseData data = engine.eval("1 + 1", null);
+        assertTrue(data.getMap().get("result"), data.getMap().get("result").contains("==> 2"));
+    }
+
+    /** 子 JVM 退出后列出片段会先启动新的子 JVM，而不是在已关闭的 JShell 上抛出异常 */
+    @Test(timeout = 60_000)
+    public void listSnippetsAfterExit() {
+        JShellEngine engine = JShellEngine.open(SESSION);
+        engine.eval("int x = 1;", null);
+        assertTrue(engine.listSnippets().getMap().get("vars").contains("x = 1"));
+
+        engine.eval("System.exit(0);", null);
+        ResponseData data = engine.listSnippets();
+        assertEquals(200, data.getStatus());
+        assertEquals("", data.getMap().get("vars"));
+    }
+
+    @Test(timeout = 30_000)
+    public void closedEngineIsNotRestarted() {
+        JShellEngine engine = JShellEngine.open(SESSION);
+        JShellEngine.closeSession(SESSION);
+        assertNotEquals(200, engine.eval("1", null).getStatus());
+        assertNotEquals(200, engine.listSnippets().getStatus());
+    }
+}
@@ -0,0 +1,84 @@
+package core;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import org.junit.After;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+public class LineIndexTest {
+
+    private Path file;
+
+    @After
+    public void delete() throws IOException {
+        if (file != null) Files.deleteIfExists(file);
+    }
+
+    private LineIndex.Window read(String content, long fromLine, int count) throws IOException {
+        byte[] bytes = content.getBytes(StandardCharsets.UTF_8);
+        file = Files.createTempFile("line-index", ".txt");
+        Files.write(file, bytes);
+        LineIndex index = new LineIndex();
+        index.feed(bytes, 0, bytes.length);
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            return index.read(channel, 0, fromLine, count);
+        }
+    }
+
+    @Test
+    public void readsWindowAcrossSamplePoints() throws IOException {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < 3000; i++) sb.append("line ").append(i).append('\n');
+        LineIndex.Window window = read(sb.toString(), 2047, 3);
+        assertEquals("line 2047\nline 2048\nline 2049\n", window.text());
+        assertEquals(3, window.lineCount());
+        assertFalse(window.truncated());
+    }
+
+    @Test
+    public void lastLineWithoutNewline() throws IOException {
+        LineIndex.Window window = read("a\nb", 0, 10);
+        assertEquals("a\nb", window.text());
+        assertEquals(2, window.lineCount());
+        assertEquals(3, window.endOffset());
+    }
+
+    @Test
+    public void pastEndIsEmpty() throws IOException {
+        LineIndex.Window window = read("a\nb\n", 5, 10);
+        assertEquals("", window.text());
+        assertEquals(0, window.lineCount());
+    }
+
+    /** 超长的行只返回开头，且不会截断在多字节字符中间 */
+    @Test
+    public void longLineIsTruncated() throws IOException {
+        String longLine = "中".repeat(100_000);
+        LineIndex.Window window = read("x\n" + longLine + "\ny\n", 0, 3);
+        String[] lines = window.text().split("\n");
+        assertEquals(3, window.lineCount());
+        assertEquals(1, window.truncatedLines());
+        assertTrue(lines[1].length() < longLine.length());
+        assertTrue(longLine.startsWith(lines[1]));
+        assertEquals("y", lines[2]);
+    }
+
+    /** 窗口满时在整行处结束，下一次从下一行继续 */
+    @Test
+    public void windowStopsAtByteLimit() throws IOException {
+        String line = "a".repeat(60_000);
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < 40; i++) sb.append(line).append('\n');
+        LineIndex.Window window = read(sb.toString(), 0, 40);
+        assertTrue(window.truncated());
+        assertTrue(window.lineCount() < 40);
+        assertEquals(0, window.truncatedLines());
+        assertEquals(window.lineCount() * 60_001L, window.endOffset());
+        assertTrue(window.text().length() <= 1024 * 1024 + 1);
+    }
+}
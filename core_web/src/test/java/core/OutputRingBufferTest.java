@@ -0,0 +1,81 @@
+package core;
+
+import java.nio.charset.StandardCharsets;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+public class OutputRingBufferTest {
+
+    private static void append(OutputRingBuffer buffer, String s) {
+        byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+        buffer.append(bytes, 0, bytes.length);
+    }
+
+    @Test
+    public void cursorContinuesWhereItStopped() {
+        OutputRingBuffer buffer = new OutputRingBuffer(16);
+        append(buffer, "abc");
+        OutputRingBuffer.Chunk first = buffer.readFrom(0);
+        assertEquals("abc", first.text());
+        assertEquals(3, first.nextSeq());
+        append(buffer, "de");
+        OutputRingBuffer.Chunk second = buffer.readFrom(first.nextSeq());
+        assertEquals("de", second.text());
+        assertEquals(5, second.nextSeq());
+        assertEquals(0, second.dropped());
+        assertTrue(buffer.readFrom(second.nextSeq()).isEmpty());
+    }
+
+    @Test
+    public void readAcrossWrapAround() {
+        OutputRingBuffer buffer = new OutputRingBuffer(8);
+        append(buffer, "12345");
+        append(buffer, "6789");
+        assertEquals(1, buffer.tail());
+        OutputRingBuffer.Chunk chunk = buffer.readFrom(1);
+        assertEquals("23456789", chunk.text());
+        assertEquals(9, chunk.nextSeq());
+        assertEquals(0, chunk.dropped());
+    }
+
+    @Test
+    public void readRangeStopsAtEnd() {
+        OutputRingBuffer buffer = new OutputRingBuffer(8);
+        append(buffer, "abcdef");
+        OutputRingBuffer.Chunk chunk = buffer.readRange(1, 3);
+        assertEquals("bc", chunk.text());
+        assertEquals(3, chunk.nextSeq());
+    }
+
+    /** 超过容量的一次写入只保留末尾 */
+    @Test
+    public void oversizedAppendKeepsTail() {
+        OutputRingBuffer buffer = new OutputRingBuffer(4);
+        assertEquals(8, buffer.append("abcdefgh".getBytes(StandardCharsets.US_ASCII), 0, 8));
+        assertEquals(4, buffer.tail());
+        assertEquals("efgh", buffer.readFrom(4).text());
+    }
+
+    /** 落后的游标跳到下一行开头，并报告丢弃的字节数 */
+    @Test
+    public void laggingCursorSkipsToNextLine() {
+        OutputRingBuffer buffer = new OutputRingBuffer(8);
+        append(buffer, "ab\ncd\nef");
+        append(buffer, "gh\n");
+        OutputRingBuffer.Chunk chunk = buffer.readFrom(0);
+        assertEquals("efgh\n", chunk.text());
+        assertEquals(6, chunk.dropped());
+        assertEquals(11, chunk.nextSeq());
+    }
+
+    /** 没有完整行时至少不从多字节字符中间开始 */
+    @Test
+    public void laggingCursorSkipsContinuationBytes() {
+        OutputRingBuffer buffer = new OutputRingBuffer(4);
+        append(buffer, "中中");
+        OutputRingBuffer.Chunk chunk = buffer.readFrom(0);
+        assertEquals("中", chunk.text());
+        assertEquals(3, chunk.dropped());
+        assertEquals(6, chunk.nextSeq());
+    }
+}
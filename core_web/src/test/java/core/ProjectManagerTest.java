@@ -0,0 +1,61 @@
+package core;
+
+import java.util.List;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+public class ProjectManagerTest {
+
+    private static ProjectManager.Edit edit(int start, int end, String text) {
+        return new ProjectManager.Edit(start, end, text);
+    }
+
+    private static void assertRejected(String content, ProjectManager.Edit... edits) {
+        try {
+            ProjectManager.applyEdits(content, List.of(edits));
+            fail("edits should be rejected");
+        } catch (IllegalArgumentException expected) {
+            // 预期
+        }
+    }
+
+    /** 位置均相对于基准内容，与编辑的先后顺序无关 */
+    @Test
+    public void editsUseBaseOffsets() {
+        assertEquals("HELLO there", ProjectManager.applyEdits("hello world",
+                List.of(edit(6, 11, "there"), edit(0, 5, "HELLO"))));
+        assertEquals("hello, world!", ProjectManager.applyEdits("hello world",
+                List.of(edit(5, 5, ","), edit(11, 11, "!"))));
+        assertEquals("ab", ProjectManager.applyEdits("abc", List.of(edit(2, 3, ""))));
+    }
+
+    @Test
+    public void adjacentEditsAreAllowed() {
+        assertEquals("xy", ProjectManager.applyEdits("abcd", List.of(edit(0, 2, "x"), edit(2, 4, "y"))));
+    }
+
+    @Test
+    public void overlappingEditsAreRejected() {
+        assertRejected("hello world", edit(0, 5, "x"), edit(3, 7, "y"));
+        assertRejected("hello world", edit(2, 4, "x"), edit(0, 6, "y"));
+    }
+
+    @Test
+    public void outOfRangeEditsAreRejected() {
+        assertRejected("abc", edit(-1, 1, "x"));
+        assertRejected("abc", edit(2, 1, "x"));
+        assertRejected("abc", edit(0, 4, "x"));
+        assertRejected("abc", edit(4, 4, "x"));
+    }
+
+    /** 不能在代理对的两半之间切分 */
+    @Test
+    public void surrogateSplittingEditsAreRejected() {
+        String content = "a😀b";
+        assertRejected(content, edit(2, 2, "x"));
+        assertRejected(content, edit(1, 2, "x"));
+        assertRejected(content, edit(2, 4, "x"));
+        assertEquals("axb", ProjectManager.applyEdits(content, List.of(edit(1, 3, "x"))));
+        assertEquals("a😀!b", ProjectManager.applyEdits(content, List.of(edit(3, 3, "!"))));
+    }
+}
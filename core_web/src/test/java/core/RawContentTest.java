@@ -0,0 +1,45 @@
+package core;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+public class RawContentTest {
+
+    @Test
+    public void closedRange() {
+        assertArrayEquals(new long[] {0, 4}, RawContent.parseRange("bytes=0-4", 10));
+        assertArrayEquals(new long[] {5, 9}, RawContent.parseRange("bytes=5-100", 10));
+    }
+
+    @Test
+    public void openEndedRange() {
+        assertArrayEquals(new long[] {5, 9}, RawContent.parseRange("bytes=5-", 10));
+        assertArrayEquals(new long[] {9, 9}, RawContent.parseRange("bytes=9-", 10));
+    }
+
+    /** bytes=-n 为末尾 n 字节，超过文件大小时为整个文件 */
+    @Test
+    public void suffixRange() {
+        assertArrayEquals(new long[] {7, 9}, RawContent.parseRange("bytes=-3", 10));
+        assertArrayEquals(new long[] {0, 9}, RawContent.parseRange("bytes=-30", 10));
+    }
+
+    @Test
+    public void unsatisfiableRange() {
+        assertNull(RawContent.parseRange("bytes=10-", 10));
+        assertNull(RawContent.parseRange("bytes=10-20", 10));
+        assertNull(RawContent.parseRange("bytes=-0", 10));
+        assertNull(RawContent.parseRange("bytes=0-", 0));
+        assertNull(RawContent.parseRange("bytes=-5", 0));
+    }
+
+    /** 不支持或无效的 Range 忽略，返回整个文件 */
+    @Test
+    public void unsupportedRangeIsIgnored() {
+        assertEquals(0, RawContent.parseRange("bytes=0-1,3-4", 10).length);
+        assertEquals(0, RawContent.parseRange("items=0-1", 10).length);
+        assertEquals(0, RawContent.parseRange("bytes=abc", 10).length);
+        assertEquals(0, RawContent.parseRange("bytes=a-b", 10).length);
+        assertEquals(0, RawContent.parseRange("bytes=5-3", 10).length);
+    }
+}
@@ -0,0 +1,76 @@
+package core;
+
+import java.util.List;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+public class SearchIndexTest {
+
+    @Test
+    public void plainLiteralIsRequired() {
+        assertEquals(List.of("foobar"), SearchIndex.requiredLiterals("foobar"));
+        assertEquals(List.of("foo.bar"), SearchIndex.requiredLiterals("foo\\.bar"));
+    }
+
+    @Test
+    public void alternationRequiresNothing() {
+        assertEquals(List.of(), SearchIndex.requiredLiterals("foo|bar"));
+    }
+
+    /** 后面跟 ? * { 的字符可能不出现 */
+    @Test
+    public void optionalCharacterSplitsLiteral() {
+        assertEquals(List.of("abc", "efg"), SearchIndex.requiredLiterals("abcd?efg"));
+        assertEquals(List.of("efgh"), SearchIndex.requiredLiterals("abc?efgh"));
+    }
+
+    /** 可能不出现的分组中的字面量不是必须的 */
+    @Test
+    public void optionalGroupIsSkipped() {
+        assertEquals(List.of("bar"), SearchIndex.requiredLiterals("(foo)?bar"));
+        assertEquals(List.of("bar"), SearchIndex.requiredLiterals("(foo)*bar"));
+        assertEquals(List.of("bar"), SearchIndex.requiredLiterals("(foo){0,2}bar"));
+        assertEquals(List.of("bar"), SearchIndex.requiredLiterals("(?:foo)?bar"));
+        assertEquals(List.of("qux"), SearchIndex.requiredLiterals("((foo)bar)?qux"));
+        assertEquals(List.of("bar"), SearchIndex.requiredLiterals("(f(o)o\\)[)])?bar"));
+    }
+
+    /** 必须出现的分组（包括 +）中的字面量仍然计入 */
+    @Test
+    public void requiredGroupIsKept() {
+        assertEquals(List.of("foo", "bar"), SearchIndex.requiredLiterals("(foo)bar"));
+        assertEquals(List.of("foo", "bar"), SearchIndex.requiredLiterals("(foo)+bar"));
+        assertEquals(List.of("foo", "bar"), SearchIndex.requiredLiterals("(?:foo)bar"));
+        assertEquals(List.of("foo", "bar"), SearchIndex.requiredLiterals("(?<name>foo)bar"));
+        assertEquals(List.of("bar", "qux"), SearchIndex.requiredLiterals("((foo)?bar)qux"));
+    }
+
+    @Test
+    public void lookaroundIsSkipped() {
+        assertEquals(List.of("bar"), SearchIndex.requiredLiterals("(?!foo)bar"));
+        assertEquals(List.of("bar"), SearchIndex.requiredLiterals("(?<!foo)bar"));
+    }
+
+    /** 带参数的转义整段跳过，参数不计入字面量 */
+    @Test
+    public void escapePayloadIsSkipped() {
+        assertEquals(List.of("pple"), SearchIndex.requiredLiterals("\\u0041pple"));
+        assertEquals(List.of("BCD"), SearchIndex.requiredLiterals("\\x41BCD"));
+        assertEquals(List.of("pple"), SearchIndex.requiredLiterals("\\x{41}pple"));
+        assertEquals(List.of("pple"), SearchIndex.requiredLiterals("\\0101pple"));
+        assertEquals(List.of("abc"), SearchIndex.requiredLiterals("(?<n>x)\\k<n>abc"));
+        assertEquals(List.of("abc"), SearchIndex.requiredLiterals("\\cAabc"));
+        assertEquals(List.of("abc"), SearchIndex.requiredLiterals("\\p{Alpha}abc"));
+        assertEquals(List.of("abc"), SearchIndex.requiredLiterals("\\pLabc"));
+        assertEquals(List.of("abc"), SearchIndex.requiredLiterals("\\Qa.b\\Eabc"));
+        assertEquals(List.of("abc"), SearchIndex.requiredLiterals("(x)\\12abc"));
+        assertEquals(List.of("foo", "bar"), SearchIndex.requiredLiterals("foo\\dbar"));
+    }
+
+    /** 内联标志改变匹配方式，不提取 */
+    @Test
+    public void inlineFlagsRequireNothing() {
+        assertEquals(List.of(), SearchIndex.requiredLiterals("(?i)foobar"));
+        assertEquals(List.of(), SearchIndex.requiredLiterals("(?s:foo)bar"));
+    }
+}
@@ -0,0 +1,91 @@
+package core;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * WriteDurabilityBenchmark
+ * ----------------------------------------
+ * 比较三种持久化方式的保存吞吐量与延迟
+ * 模拟多个 session 同时自动保存：每个线程反复保存自己的文件（写临时文件 + WriteDurability.commit）
+ *
+ * 运行（在 core_web 目录下，先 mvn package）：
+ *   java -cp target/core_web-1.0-SNAPSHOT-jar-with-dependencies.jar:target/test-classes \
+ *        core.WriteDurabilityBenchmark [线程数] [每线程保存次数] [文件字节数] [目录]
+ * 目录默认为 target/durability-bench；不要放在 tmpfs 上，否则 fsync 不产生开销
+ */
+public class WriteDurabilityBenchmark {
+
+    public static void main(String[] args) throws Exception {
+        int threads = args.length > 0 ? Integer.parseInt(args[0]) : 8;
+        int writes = args.length > 1 ? Integer.parseInt(args[1]) : 200;
+        int bytes = args.length > 2 ? Integer.parseInt(args[2]) : 4096;
+        Path dir = Path.of(args.length > 3 ? args[3] : "target/durability-bench").toAbsolutePath();
+        Files.createDirectories(dir);
+
+        System.out.printf("threads=%d writes/thread=%d size=%dB dir=%s%n", threads, writes, bytes, dir);
+        System.out.printf("%-6s %12s %10s %10s %10s%n", "mode", "writes/s", "avg ms", "p50 ms", "p99 ms");
+        for (WriteDurability.Mode mode : WriteDurability.Mode.values()) {
+            WriteDurability durability = new WriteDurability(mode);
+            run(durability, threads, Math.max(1, writes / 10), bytes, dir, false); // 预热
+            run(durability, threads, writes, bytes, dir, true);
+        }
+    }
+
+    private static void run(WriteDurability durability, int threads, int writes, int bytes, Path dir,
+                            boolean report) throws Exception {
+        byte[] content = new byte[bytes];
+        new Random(42).nextBytes(content);
+        // 守护线程：某个线程失败时不会让 JVM 一直留着其余线程
+        ExecutorService pool = Executors.newFixedThreadPool(threads, r -> {
+            Thread t = new Thread(r);
+            t.setDaemon(true);
+            return t;
+        });
+        long elapsed;
+        long[] all = new long[threads * writes];
+        try {
+            CountDownLatch start = new CountDownLatch(1);
+            List<Future<long[]>> results = new ArrayList<>();
+            for (int t = 0; t < threads; t++) {
+                Path target = dir.resolve(durability.mode().name().toLowerCase() + "-" + t + ".txt");
+                results.add(pool.submit(() -> {
+                    long[] latencies = new long[writes];
+                    start.await();
+                    for (int i = 0; i < writes; i++) {
+                        long begin = System.nanoTime();
+                        Path temp = Files.createTempFile(dir, "." + target.getFileName(), ".tmp");
+                        Files.write(temp, content);
+                        durability.commit(temp, target);
+                        latencies[i] = System.nanoTime() - begin;
+                    }
+                    return latencies;
+                }));
+            }
+
+            long begin = System.nanoTime();
+            start.countDown();
+            int n = 0;
+            for (Future<long[]> f : results) {
+                for (long latency : f.get()) all[n++] = latency;
+            }
+            elapsed = System.nanoTime() - begin;
+        } finally {
+            pool.shutdownNow();
+        }
+
+        if (!report) return;
+        Arrays.sort(all);
+        double avg = Arrays.stream(all).average().orElse(0) / 1e6;
+        System.out.printf("%-6s %12.0f %10.2f %10.2f %10.2f%n", durability.mode().name().toLowerCase(),
+                all.length / (elapsed / 1e9), avg, all[all.length / 2] / 1e6, all[(int) (all.length * 0.99)] / 1e6);
+    }
+}